@@ -0,0 +1,229 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class that turns pictures into ASCII art, as Picture.convertToAscii
+ * 	does. Each chunk of the size of a character, 10 by 20 pixels for the
+ * 	standard GlyphSet, is replaced by the character for its average gray
+ * 	value.
+ *
+ * 	The characters of a GlyphSet are kept in a single int array of packed
+ * 	pixels, one character after the other, so that a row of a character
+ * 	can be copied into a row of the picture with System.arraycopy. The
+ * 	average gray value of a chunk is summed straight from the rows of the
+ * 	original picture, without making a grayscale copy first. The picture
+ * 	is worked on one band of chunks at a time: the rows of a band are all
+ * 	read before any of them is written, so bands can run in parallel, and
+ * 	the picture written to may be the one read from.
+ *
+ * 	The same characters can be given as text instead, one line for each
+ * 	band, for logs and terminals. Text is made one band at a time too, so
+ * 	only a row of the picture is kept in memory, however large it is.
+ */
+public class AsciiRenderer
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** The BandExecutor to run on. */
+	private final BandExecutor executor;
+
+	/** The characters to draw with. */
+	private final GlyphSet glyphs;
+
+	/** Width of a chunk, that of a character. */
+	private final int chunkWidth;
+
+	/** Height of a chunk, and so of a band. */
+	private final int chunkHeight;
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * A constructor that runs in parallel bands, on the common pool, and
+	 * 	draws with GlyphSet.getDefault().
+	 */
+	public AsciiRenderer() {
+		this(BandExecutor.parallel());
+	}
+
+	/**
+	 * A constructor that takes the BandExecutor to run on, and draws with
+	 * 	GlyphSet.getDefault().
+	 *
+	 * @param executor The BandExecutor to run on.
+	 */
+	public AsciiRenderer(BandExecutor executor) {
+		this(executor, GlyphSet.getDefault());
+	}
+
+	/**
+	 * A constructor that takes the BandExecutor to run on and the
+	 * 	characters to draw with.
+	 *
+	 * @param executor The BandExecutor to run on.
+	 * @param glyphs The characters to draw with.
+	 */
+	public AsciiRenderer(BandExecutor executor, GlyphSet glyphs) {
+		this.executor = executor;
+		this.glyphs = glyphs;
+		chunkWidth = glyphs.getWidth();
+		chunkHeight = glyphs.getHeight();
+	}
+
+	/////////////////////////////// Methods ///////////////////////////////////
+
+	/**
+	 * @return The characters drawn with.
+	 */
+	public GlyphSet getGlyphs() { return glyphs; }
+
+	/**
+	 * @param source The picture to turn into ASCII art; it is not changed.
+	 *
+	 * @return A new Picture with the ASCII art of source.
+	 */
+	public Picture render(SimplePicture source) {
+		Picture target = new Picture(source.getWidth(), source.getHeight());
+		render(source, target);
+		return target;
+	}
+
+	/**
+	 * Writes the ASCII art of a picture into another picture, or into the
+	 * 	picture itself.
+	 *
+	 * @param source The picture to turn into ASCII art.
+	 * @param target The picture to write to, of the same size as source;
+	 * 	it may be source.
+	 */
+	public void render(SimplePicture source, SimplePicture target) {
+		int width = source.getWidth();
+		int height = source.getHeight();
+		int[] atlas = glyphs.getPixels();
+
+		executor.run(height, chunkHeight, (fromY, toY) -> {
+			int[] row = new int[width];
+			long[] sums = new long[chunkCount(width)];
+			int[] levels = new int[sums.length];
+			for (int y = fromY; y < toY; y += chunkHeight) {
+				int bandHeight = Math.min(chunkHeight, height - y);
+				levels(source, y, row, sums, levels);
+				for (int j = 0; j < bandHeight; j++) {
+					for (int chunk = 0; chunk < levels.length; chunk++) {
+						int x = chunk * chunkWidth;
+						System.arraycopy(atlas,
+								glyphs.rowIndex(levels[chunk], j), row, x,
+								Math.min(chunkWidth, width - x));
+					}
+					target.setRow(y + j, row);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Writes the ASCII art of a picture as text: one line for every band,
+	 * 	each line ended by a newline, with one character for every chunk.
+	 * 	The bands are read in order, on the calling thread.
+	 *
+	 * @param source The picture to turn into ASCII art.
+	 * @param out Where to write the text.
+	 *
+	 * @throws IOException If out throws it.
+	 */
+	public void text(SimplePicture source, Appendable out)
+			throws IOException {
+		int[] row = new int[source.getWidth()];
+		long[] sums = new long[chunkCount(row.length)];
+		int[] levels = new int[sums.length];
+		for (int y = 0; y < source.getHeight(); y += chunkHeight)
+			out.append(line(source, y, row, sums, levels)).append('\n');
+	}
+
+	/**
+	 * @param source The picture to turn into ASCII art.
+	 *
+	 * @return The lines that text would write, without newlines.
+	 */
+	public List<String> lines(SimplePicture source) {
+		int[] row = new int[source.getWidth()];
+		long[] sums = new long[chunkCount(row.length)];
+		int[] levels = new int[sums.length];
+		List<String> lines = new ArrayList<String>();
+		for (int y = 0; y < source.getHeight(); y += chunkHeight)
+			lines.add(line(source, y, row, sums, levels));
+		return lines;
+	}
+
+	/**
+	 * @param source The picture.
+	 * @param y The y-coordinate of the first row of a band.
+	 * @param row An array of the width of the picture, to read rows into.
+	 * @param sums An array of chunkCount(width) sums.
+	 * @param levels An array of chunkCount(width) levels.
+	 *
+	 * @return The characters of the band.
+	 */
+	private String line(SimplePicture source, int y, int[] row,
+			long[] sums, int[] levels) {
+		levels(source, y, row, sums, levels);
+		char[] characters = new char[levels.length];
+		for (int chunk = 0; chunk < levels.length; chunk++)
+			characters[chunk] = glyphs.charAt(levels[chunk]);
+		return new String(characters);
+	}
+
+	/**
+	 * @param width The width of a picture.
+	 *
+	 * @return The number of chunks across the picture, counting a chunk cut
+	 * 	off by the right edge.
+	 */
+	private int chunkCount(int width) {
+		return (width + chunkWidth - 1) / chunkWidth;
+	}
+
+	/**
+	 * Finds the level of gray of every chunk in one band of a picture.
+	 * 	Chunks cut off by an edge only count the pixels inside.
+	 *
+	 * @param source The picture.
+	 * @param y The y-coordinate of the first row of the band.
+	 * @param row An array of the width of the picture, to read rows into.
+	 * @param sums An array of chunkCount(width) sums, to add into.
+	 * @param levels An array of chunkCount(width) levels, to write.
+	 */
+	private void levels(SimplePicture source, int y, int[] row, long[] sums,
+			int[] levels) {
+		int width = row.length;
+		int bandHeight = Math.min(chunkHeight, source.getHeight() - y);
+		Arrays.fill(sums, 0);
+		for (int j = 0; j < bandHeight; j++) {
+			source.getRow(y + j, row);
+			for (int x = 0; x < width; x++) {
+				int pixel = row[x];
+				// The gray value grayscale() would give the pixel.
+				sums[x / chunkWidth] += (((pixel >> 16) & 0xff) +
+						((pixel >> 8) & 0xff) + (pixel & 0xff)) / 3;
+			}
+		}
+		for (int chunk = 0; chunk < levels.length; chunk++) {
+			int pixels = Math.min(chunkWidth, width - chunk * chunkWidth) *
+				bandHeight;
+			levels[chunk] = glyphs.level((int) (sums[chunk] / pixels));
+		}
+	}
+
+	/**
+	 * @return A String naming this AsciiRenderer.
+	 */
+	public String toString() {
+		return "AsciiRenderer, " +
+			(executor.isParallel() ? "parallel" : "serial") + ", with " +
+			glyphs;
+	}
+
+} // End of AsciiRenderer class
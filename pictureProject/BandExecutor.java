@@ -0,0 +1,221 @@
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Class that runs the work of a picture effect over horizontal bands of
+ * 	rows. A serial BandExecutor runs all of the rows as a single band on
+ * 	the calling thread. A parallel BandExecutor splits the rows into
+ * 	several bands and runs them on a ForkJoinPool.
+ *
+ * 	Effects hand their work over as a Band that computes the rows of the
+ * 	new Picture from fromY up to toY. As long as every output row depends
+ * 	only on the original Picture and not on other output rows, the
+ * 	result is identical whichever BandExecutor runs it.
+ *
+ * 	A BandExecutor may be given a Monitor, which is told as bands finish
+ * 	and can stop an effect part way: before each band starts, the Monitor
+ * 	is asked whether to go on, and if not, the effect is left by a
+ * 	CancellationException. A monitored BandExecutor cuts the rows into
+ * 	bands even when it runs serially, so that there is something to tell.
+ */
+public class BandExecutor
+{
+
+	///////////////////////////////// Types ///////////////////////////////////
+
+	/**
+	 * The work of an effect over a band of rows.
+	 */
+	public interface Band
+	{
+		/**
+		 * Computes the rows from fromY up to, but not including, toY.
+		 *
+		 * @param fromY The first row of the band.
+		 * @param toY One past the last row of the band.
+		 */
+		public void run(int fromY, int toY);
+	}
+
+	/**
+	 * Something that follows the progress of the bands of an effect, and
+	 * 	may stop them.
+	 */
+	public interface Monitor
+	{
+		/**
+		 * Tells that a band has finished. It may be called by several
+		 * 	threads at once.
+		 *
+		 * @param rows The number of rows in the band.
+		 * @param height The number of rows being run over.
+		 */
+		public void rowsDone(int rows, int height);
+
+		/**
+		 * @return True, if the effect should stop before its next band.
+		 */
+		public boolean isCancelled();
+	}
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** The BandExecutor that runs everything on the calling thread. */
+	public static final BandExecutor SERIAL = new BandExecutor(null);
+
+	/** Fewest rows worth handing to a thread of their own. */
+	private static final int MIN_BAND_HEIGHT = 16;
+
+	/** Number of bands to make per thread, so that threads that finish
+	 * 	early can take work from slower ones. */
+	private static final int BANDS_PER_THREAD = 4;
+
+	/** The pool to run bands on, or null to run serially. */
+	private ForkJoinPool pool;
+
+	/** The Monitor to tell as bands finish, or null. */
+	private Monitor monitor;
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * A constructor that takes the pool to run bands on.
+	 *
+	 * @param pool The ForkJoinPool to use, or null to run serially.
+	 */
+	public BandExecutor(ForkJoinPool pool) {
+		this(pool, null);
+	}
+
+	/**
+	 * A constructor that takes the pool to run bands on and the Monitor to
+	 * 	tell as bands finish.
+	 *
+	 * @param pool The ForkJoinPool to use, or null to run serially.
+	 * @param monitor The Monitor, or null.
+	 */
+	public BandExecutor(ForkJoinPool pool, Monitor monitor) {
+		this.pool = pool;
+		this.monitor = monitor;
+	}
+
+	//////////////////////////////// Methods //////////////////////////////////
+
+	/**
+	 * @return A BandExecutor that runs bands on the common ForkJoinPool.
+	 */
+	public static BandExecutor parallel() {
+		return new BandExecutor(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param monitor The Monitor to tell as bands finish.
+	 *
+	 * @return A BandExecutor that runs bands as this one does, and tells
+	 * 	the Monitor as they finish.
+	 */
+	public BandExecutor withMonitor(Monitor monitor) {
+		return new BandExecutor(pool, monitor);
+	}
+
+	/**
+	 * @return True, if this BandExecutor runs bands on several threads.
+	 */
+	public boolean isParallel() {
+		return pool != null && pool.getParallelism() > 1;
+	}
+
+	/**
+	 * Runs a Band over all of the rows provided.
+	 *
+	 * @param height The number of rows.
+	 * @param band The work to run.
+	 */
+	public void run(int height, Band band) {
+		run(height, 1, band);
+	}
+
+	/**
+	 * Runs a Band over all of the rows provided, only ever splitting the
+	 * 	rows at multiples of rowsPerBlock. Effects that work on blocks of
+	 * 	several rows at a time use this so that no block is cut in two.
+	 *
+	 * @param height The number of rows.
+	 * @param rowsPerBlock The number of rows in a block.
+	 * @param band The work to run.
+	 */
+	public void run(int height, int rowsPerBlock, Band band) {
+		int blocks = (height + rowsPerBlock - 1) / rowsPerBlock;
+		int blocksPerBand = Math.max(1,
+				(MIN_BAND_HEIGHT + rowsPerBlock - 1) / rowsPerBlock);
+
+		if (isParallel()) {
+			blocksPerBand = Math.max(blocksPerBand, (blocks +
+					pool.getParallelism() * BANDS_PER_THREAD - 1) /
+					(pool.getParallelism() * BANDS_PER_THREAD));
+		}
+
+		if (monitor == null && (!isParallel() || blocks <= blocksPerBand)) {
+			band.run(0, height);
+			return;
+		}
+
+		int bandHeight = blocksPerBand * rowsPerBlock;
+		if (!isParallel() || blocks <= blocksPerBand) {
+			for (int fromY = 0; fromY < height; fromY += bandHeight)
+				runMonitored(band, fromY, Math.min(height, fromY + bandHeight),
+						height);
+			return;
+		}
+
+		ArrayList<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+		for (int fromY = 0; fromY < height; fromY += bandHeight) {
+			final int from = fromY;
+			final int to = Math.min(height, fromY + bandHeight);
+			tasks.add(new RecursiveAction() {
+				private static final long serialVersionUID = 0;
+
+				protected void compute() {
+					if (monitor == null)
+						band.run(from, to);
+					else
+						runMonitored(band, from, to, height);
+				}
+			});
+		}
+
+		// Effects run from inside a band of the same pool just fork.
+		if (ForkJoinTask.getPool() == pool)
+			ForkJoinTask.invokeAll(tasks);
+		else
+			pool.invoke(new RecursiveAction() {
+				private static final long serialVersionUID = 0;
+
+				protected void compute() {
+					ForkJoinTask.invokeAll(tasks);
+				}
+			});
+	}
+
+	/**
+	 * Runs one band, if the Monitor does not say to stop, and tells the
+	 * 	Monitor once it has finished.
+	 *
+	 * @param band The work to run.
+	 * @param fromY The first row of the band.
+	 * @param toY One past the last row of the band.
+	 * @param height The number of rows being run over.
+	 *
+	 * @throws CancellationException If the Monitor says to stop.
+	 */
+	private void runMonitored(Band band, int fromY, int toY, int height) {
+		if (monitor.isCancelled())
+			throw new CancellationException("The effect was cancelled.");
+		band.run(fromY, toY);
+		monitor.rowsDone(toY - fromY, height);
+	}
+
+} // End of BandExecutor class
@@ -0,0 +1,277 @@
+/**
+ * Class that describes a point operation on a picture as a set of lookup
+ * 	tables. A point operation changes each pixel based only on that
+ * 	pixel's own color, and each of its color components only ranges from
+ * 	0 to 255, so the whole operation can be computed ahead of time: one
+ * 	table of 256 entries each for red, green, and blue. Applying the
+ * 	operation then costs one table lookup per color component, with no
+ * 	arithmetic and no correcting of values.
+ *
+ * 	Grayscale does not fit this shape, since each new component depends
+ * 	on all three old ones. For that, a ChannelLut may also hold an average
+ * 	table, indexed by the sum of red, green, and blue. When present, each
+ * 	color component is first replaced by the average, and the three
+ * 	channel tables are then applied to that average.
+ *
+ * 	The alpha of a pixel is never changed by a ChannelLut.
+ */
+public final class ChannelLut
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** Number of entries in each channel table. */
+	public static final int CHANNEL_SIZE = 256;
+
+	/** Number of entries in the average table; red + green + blue
+	 * 	is at most 765. */
+	public static final int AVERAGE_SIZE = 768;
+
+	/** The ChannelLut that changes nothing. */
+	private static final ChannelLut IDENTITY = shift(0, 0, 0);
+
+	/** The ChannelLut for negate. */
+	private static final ChannelLut NEGATE = buildNegate();
+
+	/** The ChannelLut for grayscale. */
+	private static final ChannelLut GRAYSCALE = buildGrayscale();
+
+	/** New red value for every old red value. */
+	private final byte[] red;
+
+	/** New green value for every old green value. */
+	private final byte[] green;
+
+	/** New blue value for every old blue value. */
+	private final byte[] blue;
+
+	/** Average for every sum of red, green, and blue, or null if the
+	 * 	color components are not averaged first. */
+	private final byte[] average;
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * A constructor that takes one table for each color component. The
+	 * 	tables are copied.
+	 *
+	 * @param red The new red value for every old red value.
+	 * @param green The new green value for every old green value.
+	 * @param blue The new blue value for every old blue value.
+	 */
+	public ChannelLut(byte[] red, byte[] green, byte[] blue) {
+		this(red.clone(), green.clone(), blue.clone(), null);
+	}
+
+	/**
+	 * A constructor that uses the tables provided without copying them.
+	 *
+	 * @param red The new red value for every old red value.
+	 * @param green The new green value for every old green value.
+	 * @param blue The new blue value for every old blue value.
+	 * @param average The average for every sum of red, green, and blue,
+	 * 	or null.
+	 */
+	private ChannelLut(byte[] red, byte[] green, byte[] blue,
+			byte[] average) {
+		if (red.length != CHANNEL_SIZE || green.length != CHANNEL_SIZE ||
+				blue.length != CHANNEL_SIZE)
+			throw new IllegalArgumentException(
+					"Channel tables must have " + CHANNEL_SIZE + " entries.");
+		if (average != null && average.length != AVERAGE_SIZE)
+			throw new IllegalArgumentException(
+					"The average table must have " + AVERAGE_SIZE +
+					" entries.");
+
+		this.red = red;
+		this.green = green;
+		this.blue = blue;
+		this.average = average;
+	}
+
+	//////////////////////////////// Factories ////////////////////////////////
+
+	/**
+	 * @return The ChannelLut that changes nothing.
+	 */
+	public static ChannelLut identity() { return IDENTITY; }
+
+	/**
+	 * @return The ChannelLut that sets each color component to 255 minus
+	 * 	its current value.
+	 */
+	public static ChannelLut negate() { return NEGATE; }
+
+	/**
+	 * @return The ChannelLut that sets each color component to the
+	 * 	average of the red, green, and blue components.
+	 */
+	public static ChannelLut grayscale() { return GRAYSCALE; }
+
+	/**
+	 * @param redAmount The amount to add to red.
+	 * @param greenAmount The amount to add to green.
+	 * @param blueAmount The amount to add to blue.
+	 *
+	 * @return The ChannelLut that adds each amount to its color component,
+	 * 	correcting the result to be within 0 and 255. Negative amounts
+	 * 	darken.
+	 */
+	public static ChannelLut shift(int redAmount, int greenAmount,
+			int blueAmount) {
+		return new ChannelLut(shiftTable(redAmount), shiftTable(greenAmount),
+				shiftTable(blueAmount), null);
+	}
+
+	/**
+	 * @param amount The amount to add.
+	 *
+	 * @return A channel table adding amount to every value, corrected to be
+	 * 	within 0 and 255.
+	 */
+	private static byte[] shiftTable(int amount) {
+		byte[] table = new byte[CHANNEL_SIZE];
+		for (int value = 0; value < CHANNEL_SIZE; value++)
+			table[value] = (byte) Pixel.correctValue(value + amount);
+		return table;
+	}
+
+	/**
+	 * @return The ChannelLut for negate.
+	 */
+	private static ChannelLut buildNegate() {
+		byte[] table = new byte[CHANNEL_SIZE];
+		for (int value = 0; value < CHANNEL_SIZE; value++)
+			table[value] = (byte) (255 - value);
+		return new ChannelLut(table, table, table, null);
+	}
+
+	/**
+	 * @return The ChannelLut for grayscale.
+	 */
+	private static ChannelLut buildGrayscale() {
+		byte[] average = new byte[AVERAGE_SIZE];
+		for (int sum = 0; sum < AVERAGE_SIZE; sum++)
+			average[sum] = (byte) Math.min(sum / 3, 255);
+		return new ChannelLut(IDENTITY.red, IDENTITY.green, IDENTITY.blue,
+				average);
+	}
+
+	///////////////////////////////// Methods /////////////////////////////////
+
+	/**
+	 * @return True, if the color components are averaged before the
+	 * 	channel tables are applied.
+	 */
+	public boolean isAveraging() { return average != null; }
+
+	/**
+	 * @param value A color component, from 0 to 255.
+	 *
+	 * @return The new red value for that old red value.
+	 */
+	public int lookupRed(int value) { return red[value] & 0xff; }
+
+	/**
+	 * @param value A color component, from 0 to 255.
+	 *
+	 * @return The new green value for that old green value.
+	 */
+	public int lookupGreen(int value) { return green[value] & 0xff; }
+
+	/**
+	 * @param value A color component, from 0 to 255.
+	 *
+	 * @return The new blue value for that old blue value.
+	 */
+	public int lookupBlue(int value) { return blue[value] & 0xff; }
+
+	/**
+	 * Combines this ChannelLut with one applied after it. Since the new
+	 * 	tables are simply the old tables looked up through the next ones,
+	 * 	every correction of values made by either ChannelLut is kept.
+	 *
+	 * 	This is only possible if next does not average, or if this
+	 * 	ChannelLut averages as well; in the latter case every component
+	 * 	coming out of this ChannelLut depends only on the first average,
+	 * 	so the two averages fold into one table.
+	 *
+	 * @param next The ChannelLut to apply after this one.
+	 *
+	 * @return A ChannelLut with the same effect as this one followed by
+	 * 	next.
+	 *
+	 * @throws IllegalArgumentException If next averages and this
+	 * 	ChannelLut does not.
+	 */
+	public ChannelLut andThen(ChannelLut next) {
+		if (next.average != null && average == null)
+			throw new IllegalArgumentException("Cannot fold an average " +
+					"into a ChannelLut that does not average.");
+
+		byte[] newRed = new byte[CHANNEL_SIZE];
+		byte[] newGreen = new byte[CHANNEL_SIZE];
+		byte[] newBlue = new byte[CHANNEL_SIZE];
+		byte[] newAverage = average;
+
+		if (next.average != null) {
+			/* Each component after this ChannelLut is its table looked up
+			 * at our average; next averages those three values. */
+			newAverage = new byte[AVERAGE_SIZE];
+			for (int sum = 0; sum < AVERAGE_SIZE; sum++) {
+				int gray = average[sum] & 0xff;
+				newAverage[sum] = next.average[lookupRed(gray) +
+						lookupGreen(gray) + lookupBlue(gray)];
+			}
+			for (int value = 0; value < CHANNEL_SIZE; value++) {
+				newRed[value] = next.red[value];
+				newGreen[value] = next.green[value];
+				newBlue[value] = next.blue[value];
+			}
+		} else {
+			for (int value = 0; value < CHANNEL_SIZE; value++) {
+				newRed[value] = next.red[lookupRed(value)];
+				newGreen[value] = next.green[lookupGreen(value)];
+				newBlue[value] = next.blue[lookupBlue(value)];
+			}
+		}
+
+		return new ChannelLut(newRed, newGreen, newBlue, newAverage);
+	}
+
+	/**
+	 * Applies this ChannelLut to a single pixel.
+	 *
+	 * @param value The pixel as a packed int, with alpha, red, green, and
+	 * 	blue each taking 8 bits from left to right.
+	 *
+	 * @return The new pixel, in the same form.
+	 */
+	public int apply(int value) {
+		int r = (value >> 16) & 0xff;
+		int g = (value >> 8) & 0xff;
+		int b = value & 0xff;
+
+		if (average != null) {
+			r = average[r + g + b] & 0xff;
+			g = r;
+			b = r;
+		}
+
+		return (value & 0xff000000) | ((red[r] & 0xff) << 16) |
+			((green[g] & 0xff) << 8) | (blue[b] & 0xff);
+	}
+
+	/**
+	 * Applies this ChannelLut to a run of pixels in place.
+	 *
+	 * @param raster The packed pixels.
+	 * @param from The index of the first pixel to change.
+	 * @param to One past the index of the last pixel to change.
+	 */
+	public void apply(int[] raster, int from, int to) {
+		for (int index = from; index < to; index++)
+			raster[index] = apply(raster[index]);
+	}
+
+} // End of ChannelLut class
@@ -0,0 +1,101 @@
+/**
+ * Class that compares the distance between two colors with a threshold,
+ * 	using only integer arithmetic. The effects of Picture decide whether
+ * 	two colors are close by truncating their color distance to an int and
+ * 	comparing it with a threshold, as in
+ *
+ * 	(int) Pixel.colorDistance(rgb1, rgb2) < threshold
+ *
+ * 	Since the threshold is a whole number, the same decision can be made
+ * 	on the squared distance, by comparing it with a squared limit worked
+ * 	out once for the threshold. No square root is ever taken, and every
+ * 	decision is exactly the one the truncated distance would give.
+ */
+public final class ColorThreshold
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** Largest squared distance between two colors: 3 * 255 * 255. */
+	public static final int MAX_SQUARED_DISTANCE = 195075;
+
+	/** Smallest threshold no truncated distance reaches; the largest
+	 * 	distance between two colors is just under 442. */
+	private static final int OUT_OF_REACH = 442;
+
+	/** The threshold, as given. */
+	private final int threshold;
+
+	/** Squared distances below this have a truncated distance below the
+	 * 	threshold. */
+	private final int withinLimit;
+
+	/** Squared distances from this on have a truncated distance above the
+	 * 	threshold. */
+	private final int beyondLimit;
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * A constructor that takes the threshold to compare with.
+	 *
+	 * @param threshold The threshold on the color distance.
+	 */
+	public ColorThreshold(int threshold) {
+		this.threshold = threshold;
+
+		/* The truncated distance d is below t exactly when the distance is
+		 * below t, that is when the squared distance is below t * t. It is
+		 * above t exactly when the distance is at least t + 1. Thresholds
+		 * are first kept within -1 and OUT_OF_REACH so that nothing
+		 * overflows; beyond those, the decisions no longer change. */
+		int clamped = Math.max(-1, Math.min(OUT_OF_REACH, threshold));
+		withinLimit = clamped > 0 ? clamped * clamped : 0;
+		beyondLimit = (clamped + 1) * (clamped + 1);
+	}
+
+	/////////////////////////////// Methods ///////////////////////////////////
+
+	/**
+	 * @return The threshold, as given.
+	 */
+	public int getThreshold() { return threshold; }
+
+	/**
+	 * Computes the squared distance between two packed colors. Alpha is
+	 * 	ignored, as it is by Pixel.colorDistance.
+	 *
+	 * @param rgb1 A packed color value.
+	 * @param rgb2 A packed color value.
+	 *
+	 * @return The squared distance between the two colors, from 0 to
+	 * 	MAX_SQUARED_DISTANCE.
+	 */
+	public static int squaredDistance(int rgb1, int rgb2) {
+		int red = ((rgb1 >> 16) & 0xff) - ((rgb2 >> 16) & 0xff);
+		int green = ((rgb1 >> 8) & 0xff) - ((rgb2 >> 8) & 0xff);
+		int blue = (rgb1 & 0xff) - (rgb2 & 0xff);
+		return red * red + green * green + blue * blue;
+	}
+
+	/**
+	 * @param rgb1 A packed color value.
+	 * @param rgb2 A packed color value.
+	 *
+	 * @return True, if (int) Pixel.colorDistance(rgb1, rgb2) < threshold.
+	 */
+	public boolean isWithin(int rgb1, int rgb2) {
+		return squaredDistance(rgb1, rgb2) < withinLimit;
+	}
+
+	/**
+	 * @param rgb1 A packed color value.
+	 * @param rgb2 A packed color value.
+	 *
+	 * @return True, if (int) Pixel.colorDistance(rgb1, rgb2) > threshold.
+	 */
+	public boolean isBeyond(int rgb1, int rgb2) {
+		return squaredDistance(rgb1, rgb2) >= beyondLimit;
+	}
+
+} // End of ColorThreshold class
@@ -0,0 +1,199 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Class that holds the pixels of a picture outside of the Java heap, in a
+ * 	direct ByteBuffer. A large picture on the heap is a single large array
+ * 	that the garbage collector must keep moving and scanning for as long as
+ * 	the picture lives; the memory of a direct buffer is never touched by
+ * 	the garbage collector, and only a small ByteBuffer object is left on
+ * 	the heap to stand for it.
+ *
+ * 	Pixels are packed ints, with alpha, red, green, and blue each taking 8
+ * 	bits from left to right, as in the raster of a SimplePicture, and are
+ * 	laid out one row after the other.
+ */
+public class DirectRaster
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** Width of the picture. */
+	private final int width;
+
+	/** Height of the picture. */
+	private final int height;
+
+	/** The pixels; null once closed. */
+	private IntBuffer pixels;
+
+	/** A BufferedImage that reads and writes the pixels where they are, or
+	 * 	null if none was asked for yet. */
+	private BufferedImage image;
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * A constructor that allocates the pixels of a picture, all 0.
+	 *
+	 * @param width The width of the picture.
+	 * @param height The height of the picture.
+	 *
+	 * @throws IllegalArgumentException If the picture does not fit in a
+	 * 	single buffer.
+	 */
+	public DirectRaster(int width, int height) {
+		if (width <= 0 || height <= 0 ||
+				(long) width * height > Integer.MAX_VALUE / 4)
+			throw new IllegalArgumentException("A picture of " + width +
+					" by " + height + " pixels cannot be kept off the heap.");
+		this.width = width;
+		this.height = height;
+		pixels = ByteBuffer.allocateDirect(width * height * 4)
+				.order(ByteOrder.nativeOrder()).asIntBuffer();
+	}
+
+	/////////////////////////////// Methods ///////////////////////////////////
+
+	/**
+	 * @return The width of the picture.
+	 */
+	public int getWidth() { return width; }
+
+	/**
+	 * @return The height of the picture.
+	 */
+	public int getHeight() { return height; }
+
+	/**
+	 * @return A new DirectRaster holding the same pixels.
+	 */
+	public DirectRaster copy() {
+		DirectRaster copy = new DirectRaster(width, height);
+		copy.pixels.put(pixels.duplicate());
+		copy.pixels.clear();
+		return copy;
+	}
+
+	/**
+	 * @param x The x-coordinate of the pixel.
+	 * @param y The y-coordinate of the pixel.
+	 *
+	 * @return The pixel; the coordinates are not checked.
+	 */
+	public int get(int x, int y) {
+		return pixels.get(y * width + x);
+	}
+
+	/**
+	 * Sets a pixel.
+	 *
+	 * @param x The x-coordinate of the pixel.
+	 * @param y The y-coordinate of the pixel.
+	 * @param argb The new value of the pixel; the coordinates are not
+	 * 	checked.
+	 */
+	public void set(int x, int y, int argb) {
+		pixels.put(y * width + x, argb);
+	}
+
+	/**
+	 * Copies one row of pixels out of this DirectRaster.
+	 *
+	 * @param y The y-coordinate of the row.
+	 * @param row The array to copy into.
+	 * @param offset The index in row to copy the first pixel to.
+	 */
+	public void getRow(int y, int[] row, int offset) {
+		// A duplicate has its own position, so threads never share one.
+		IntBuffer view = pixels.duplicate();
+		view.position(y * width);
+		view.get(row, offset, width);
+	}
+
+	/**
+	 * Overwrites one row of this DirectRaster.
+	 *
+	 * @param y The y-coordinate of the row.
+	 * @param row The pixels to copy in; the first width values are used.
+	 */
+	public void setRow(int y, int[] row) {
+		IntBuffer view = pixels.duplicate();
+		view.position(y * width);
+		view.put(row, 0, width);
+	}
+
+	/**
+	 * @return A TYPE_INT_ARGB style BufferedImage that reads and writes the
+	 * 	pixels where they are, for drawing and display. Drawing through it
+	 * 	goes one pixel at a time, and is much slower than drawing on a
+	 * 	BufferedImage of the usual kind.
+	 */
+	public synchronized BufferedImage getImage() {
+		if (image == null) {
+			SinglePixelPackedSampleModel model =
+				new SinglePixelPackedSampleModel(DataBuffer.TYPE_INT, width,
+						height, new int[] { 0x00ff0000, 0x0000ff00,
+						0x000000ff, 0xff000000 });
+			image = new BufferedImage(ColorModel.getRGBdefault(),
+					Raster.createWritableRaster(model, new PixelBuffer(),
+							null), false, null);
+		}
+		return image;
+	}
+
+	/**
+	 * Lets go of the pixels. The memory is handed back once the garbage
+	 * 	collector finds the small ByteBuffer object unreachable, which may
+	 * 	not be until a full collection if it has lived long enough to be
+	 * 	moved to the old generation; the memory is not freed here, since a
+	 * 	thread still reading the pixels would then read freed memory. The
+	 * 	DirectRaster, and any image from getImage, must not be used
+	 * 	afterwards.
+	 */
+	public synchronized void close() {
+		pixels = null;
+		image = null;
+	}
+
+	/**
+	 * DataBuffer over the pixels, one bank of width * height ints.
+	 */
+	private class PixelBuffer extends DataBuffer
+	{
+
+		/**
+		 * A constructor for the single bank of pixels.
+		 */
+		PixelBuffer() {
+			super(DataBuffer.TYPE_INT, width * height);
+		}
+
+		/**
+		 * @param bank The bank, always 0.
+		 * @param i The index of the pixel, y * width + x.
+		 *
+		 * @return The pixel.
+		 */
+		public int getElem(int bank, int i) {
+			return pixels.get(i);
+		}
+
+		/**
+		 * @param bank The bank, always 0.
+		 * @param i The index of the pixel, y * width + x.
+		 * @param value The new value of the pixel.
+		 */
+		public void setElem(int bank, int i, int value) {
+			pixels.put(i, value);
+		}
+
+	} // End of PixelBuffer class
+
+} // End of DirectRaster class
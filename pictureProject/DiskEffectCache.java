@@ -0,0 +1,439 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Class that keeps the results of Picture effects in files in a directory,
+ * 	so that they outlive the process that computed them. A result is found
+ * 	by the digest of the original picture, the name of the effect, and
+ * 	its parameters: the SHA-256 of these is the name of its file. Since
+ * 	the name comes from the content alone, any number of processes may
+ * 	share a directory, and since the digest is a SHA-256, two pictures
+ * 	never share a file. A Picture keeps its digest until its pixels
+ * 	change, so running several effects on it only digests it once.
+ *
+ * 	A file holds the width, the height, and then the pixels, row after
+ * 	row, as little-endian packed ints, so that reading a result back is a
+ * 	plain copy. A file is written under a temporary name and then renamed,
+ * 	which is atomic, so a reader never sees a file half written.
+ *
+ * 	When the files take more than a given number of bytes, the ones used
+ * 	least recently are deleted; the time a file was last used is kept as
+ * 	its last-modified time.
+ *
+ * 	A cache is only there to save time, so a file that cannot be read is
+ * 	taken as missing, and a result that cannot be written is simply not
+ * 	kept.
+ *
+ * 	An EffectCache can be put in front of a DiskEffectCache, to keep the
+ * 	results used most in memory as well.
+ */
+public class DiskEffectCache
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** First int of every file, "PICR" in ASCII. */
+	private static final int MAGIC = 0x50494352;
+
+	/** Size of the header before the pixels: magic, width, and height. */
+	private static final int HEADER_BYTES = 12;
+
+	/** Ending of the name of every file of a result. */
+	private static final String SUFFIX = ".pic";
+
+	/** Ending of the name of files being written. */
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	/** Number of bytes read or written at once. */
+	private static final int CHUNK_BYTES = 1 << 20;
+
+	/** The directory holding the files. */
+	private final File directory;
+
+	/** The most bytes the files may take. */
+	private final long maxBytes;
+
+	/** Bytes the files take, as far as this process knows. */
+	private long bytes;
+
+	/** Number of calls that found their result in a file. */
+	private long hits;
+
+	/** Number of calls that had to run their effect. */
+	private long misses;
+
+	/** Number of files deleted to make room. */
+	private long evictions;
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * A constructor that takes the directory to keep the files in, which is
+	 * 	created if it does not exist, and the most bytes they may take.
+	 * 	Temporary files left behind by a process that stopped while
+	 * 	writing are deleted.
+	 *
+	 * @param directory The directory.
+	 * @param maxBytes The most bytes the files may take.
+	 *
+	 * @throws IOException If the directory could not be created or read.
+	 * @throws IllegalArgumentException If maxBytes is negative.
+	 */
+	public DiskEffectCache(File directory, long maxBytes) throws IOException {
+		if (maxBytes < 0)
+			throw new IllegalArgumentException(
+					"A DiskEffectCache cannot keep " + maxBytes + " bytes.");
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		Files.createDirectories(directory.toPath());
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(
+				directory.toPath(), "*" + TEMP_SUFFIX)) {
+			for (Path file : files)
+				Files.deleteIfExists(file);
+		}
+		bytes = totalBytes(listFiles());
+	}
+
+	/////////////////////////////// Methods ///////////////////////////////////
+
+	/**
+	 * Returns the result of an effect on a picture, running the effect only
+	 * 	if its result is not in a file already.
+	 *
+	 * @param source The picture to run the effect on.
+	 * @param effect The name of the effect.
+	 * @param compute Runs the effect on a picture and returns the result.
+	 * 	It is given source, and must not change it.
+	 * @param parameters The parameters of the effect, whose toString and
+	 * 	hashCode methods must go by their values alone, and be the same in
+	 * 	every run.
+	 *
+	 * @return The result, a new Picture.
+	 */
+	public Picture apply(Picture source, String effect,
+			UnaryOperator<Picture> compute, Object... parameters) {
+		Path file = fileFor(source, effect, parameters);
+		Picture result = read(file);
+		synchronized (this) {
+			if (result != null)
+				hits++;
+			else
+				misses++;
+		}
+		if (result != null)
+			return result;
+
+		result = compute.apply(source);
+		write(file, result);
+		return result;
+	}
+
+	/**
+	 * @param source The picture.
+	 * @param effect The name of the effect.
+	 * @param parameters The parameters of the effect.
+	 *
+	 * @return The file of the result.
+	 */
+	private Path fileFor(Picture source, String effect,
+			Object[] parameters) {
+		StringBuilder key = new StringBuilder(source.digest());
+		key.append('/').append(effect);
+		for (Object parameter : parameters) {
+			key.append('/').append(parameter == null ? "null" :
+				parameter.getClass().getName() + ":" + parameter + ":" +
+				parameter.hashCode());
+		}
+		return directory.toPath().resolve(sha256(key.toString()) + SUFFIX);
+	}
+
+	/**
+	 * @param text A String.
+	 *
+	 * @return The SHA-256 of the UTF-8 bytes of text, in hexadecimal.
+	 */
+	private static String sha256(String text) {
+		MessageDigest sha;
+		try {
+			sha = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			// Every Java platform is required to have SHA-256.
+			throw new IllegalStateException(ex);
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b : sha.digest(text.getBytes(StandardCharsets.UTF_8)))
+			hex.append(String.format("%02x", b));
+		return hex.toString();
+	}
+
+	/**
+	 * Reads a result back, and marks it as just used.
+	 *
+	 * @param file The file of the result.
+	 *
+	 * @return The result, or null if there is no such file or it cannot be
+	 * 	read.
+	 */
+	private Picture read(Path file) {
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate(CHUNK_BYTES)
+				.order(ByteOrder.LITTLE_ENDIAN);
+			buffer.limit(HEADER_BYTES);
+			readFully(channel, buffer);
+			int width = buffer.getInt(4);
+			int height = buffer.getInt(8);
+			if (buffer.getInt(0) != MAGIC || width <= 0 || height <= 0 ||
+					channel.size() != HEADER_BYTES + 4L * width * height)
+				return null;
+
+			Picture result = new Picture(width, height);
+			int[] raster = result.getRaster();
+			int rowsPerChunk = Math.max(1, CHUNK_BYTES / (4 * width));
+			if (buffer.capacity() < 4 * width)
+				buffer = ByteBuffer.allocate(4 * width)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			for (int y = 0; y < height; y += rowsPerChunk) {
+				int rows = Math.min(rowsPerChunk, height - y);
+				buffer.clear().limit(rows * 4 * width);
+				readFully(channel, buffer);
+				IntBuffer pixels = buffer.asIntBuffer();
+				for (int row = 0; row < rows; row++)
+					pixels.get(raster, result.rasterIndex(0, y + row), width);
+			}
+			result.pixelsChanged();
+			Files.setLastModifiedTime(file,
+					FileTime.fromMillis(System.currentTimeMillis()));
+			return result;
+		} catch (IOException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Fills a buffer from a channel, from its position up to its limit, and
+	 * 	flips it for reading.
+	 *
+	 * @param channel The channel.
+	 * @param buffer The buffer.
+	 *
+	 * @throws IOException If the channel ends first, or cannot be read.
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer buffer)
+			throws IOException {
+		while (buffer.hasRemaining())
+			if (channel.read(buffer) < 0)
+				throw new IOException("The file ends too soon.");
+		buffer.flip();
+	}
+
+	/**
+	 * Writes a result to a temporary file and renames it to its file, then
+	 * 	deletes the files used least recently if they take too many bytes.
+	 *
+	 * @param file The file of the result.
+	 * @param result The result.
+	 */
+	private void write(Path file, Picture result) {
+		int width = result.getWidth();
+		int height = result.getHeight();
+		long size = HEADER_BYTES + 4L * width * height;
+		if (size > maxBytes)
+			return;
+
+		Path temp = null;
+		try {
+			temp = Files.createTempFile(directory.toPath(), "result",
+					TEMP_SUFFIX);
+			try (FileChannel channel = FileChannel.open(temp,
+					StandardOpenOption.WRITE)) {
+				ByteBuffer buffer = ByteBuffer.allocate(
+						Math.max(CHUNK_BYTES, 4 * width))
+					.order(ByteOrder.LITTLE_ENDIAN);
+				buffer.putInt(MAGIC).putInt(width).putInt(height);
+				int[] row = new int[width];
+				for (int y = 0; y < height; y++) {
+					if (buffer.remaining() < 4 * width)
+						writeFully(channel, buffer);
+					buffer.asIntBuffer().put(result.getRow(y, row));
+					buffer.position(buffer.position() + 4 * width);
+				}
+				writeFully(channel, buffer);
+			}
+			Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException ex) {
+			try {
+				if (temp != null)
+					Files.deleteIfExists(temp);
+			} catch (IOException ignored) {
+				// Left for the next DiskEffectCache on the directory.
+			}
+			return;
+		}
+
+		boolean full;
+		synchronized (this) {
+			bytes += size;
+			full = bytes > maxBytes;
+		}
+		if (full)
+			prune();
+	}
+
+	/**
+	 * Writes what a buffer holds to a channel, and clears it.
+	 *
+	 * @param channel The channel.
+	 * @param buffer The buffer.
+	 *
+	 * @throws IOException If the channel cannot be written to.
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buffer)
+			throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * Deletes the files used least recently until the rest take at most
+	 * 	maxBytes. The directory is listed again, so that files written by
+	 * 	other processes are counted as well.
+	 */
+	public synchronized void prune() {
+		List<Path> files;
+		try {
+			files = listFiles();
+		} catch (IOException ex) {
+			return;
+		}
+		Map<Path, FileTime> times = new HashMap<Path, FileTime>();
+		for (Path file : files) {
+			try {
+				times.put(file, Files.getLastModifiedTime(file));
+			} catch (IOException ex) {
+				// Deleted by another process meanwhile.
+			}
+		}
+		List<Path> sorted = new ArrayList<Path>(times.keySet());
+		sorted.sort((a, b) -> times.get(a).compareTo(times.get(b)));
+
+		bytes = totalBytes(sorted);
+		for (int i = 0; i < sorted.size() && bytes > maxBytes; i++) {
+			Path file = sorted.get(i);
+			try {
+				long size = Files.size(file);
+				Files.delete(file);
+				bytes -= size;
+				evictions++;
+			} catch (IOException ex) {
+				// Deleted by another process meanwhile.
+			}
+		}
+	}
+
+	/**
+	 * @return The files of every result in the directory.
+	 *
+	 * @throws IOException If the directory cannot be read.
+	 */
+	private List<Path> listFiles() throws IOException {
+		List<Path> files = new ArrayList<Path>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(
+				directory.toPath(), "*" + SUFFIX)) {
+			for (Path file : stream)
+				files.add(file);
+		}
+		return files;
+	}
+
+	/**
+	 * @param files Some files.
+	 *
+	 * @return The bytes they take, leaving out any that are gone.
+	 */
+	private static long totalBytes(List<Path> files) {
+		long total = 0;
+		for (Path file : files) {
+			try {
+				total += Files.size(file);
+			} catch (IOException ex) {
+				// Deleted by another process meanwhile.
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Deletes every file of a result.
+	 *
+	 * @throws IOException If the directory cannot be read, or a file cannot
+	 * 	be deleted.
+	 */
+	public synchronized void clear() throws IOException {
+		for (Path file : listFiles())
+			Files.deleteIfExists(file);
+		bytes = 0;
+	}
+
+	/**
+	 * @return The directory holding the files.
+	 */
+	public File getDirectory() { return directory; }
+
+	/**
+	 * @return The most bytes the files may take.
+	 */
+	public long getMaxBytes() { return maxBytes; }
+
+	/**
+	 * @return The bytes the files take, as far as this process knows.
+	 */
+	public synchronized long getBytes() { return bytes; }
+
+	/**
+	 * @return The number of calls that found their result in a file.
+	 */
+	public synchronized long getHits() { return hits; }
+
+	/**
+	 * @return The number of calls that had to run their effect.
+	 */
+	public synchronized long getMisses() { return misses; }
+
+	/**
+	 * @return The number of files deleted to make room.
+	 */
+	public synchronized long getEvictions() { return evictions; }
+
+	/**
+	 * @return A String with the directory, the counters, and the bytes
+	 * 	kept.
+	 */
+	public synchronized String toString() {
+		return "DiskEffectCache in " + directory + ", " + bytes + " of " +
+			maxBytes + " bytes, " + hits + " hits, " + misses + " misses, " +
+			evictions + " evictions";
+	}
+
+} // End of DiskEffectCache class
@@ -0,0 +1,358 @@
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Class that keeps the results of Picture effects, so that the same effect
+ * 	with the same parameters on a picture with the same pixels is only run
+ * 	once. Results are found by the content hash of the original picture,
+ * 	the name of the effect, and its parameters, and are kept until the
+ * 	pixels of all the results kept would take more than a given number of
+ * 	bytes, when the results used least recently are dropped.
+ *
+ * 	The results kept are never handed out themselves: each call returns a
+ * 	new copy, which shares its pixels with the result kept until either is
+ * 	written to (see SimplePicture), so that a copy costs next to nothing
+ * 	and changing it cannot change what later calls get.
+ *
+ * 	An EffectCache may be used by many threads at once. An effect is run
+ * 	without holding the lock, so two threads missing on the same result at
+ * 	once may both run it; only the first result is kept.
+ *
+ * 	The content hash is 64 bits long, so two different pictures sharing
+ * 	one, while possible, is too unlikely to guard against.
+ *
+ * 	An EffectCache may be given a DiskEffectCache to ask before running an
+ * 	effect, so that results outlive the process. Set with
+ * 	Picture.setEffectCache, it is used by the effects of every Picture
+ * 	that are slow enough to be worth it.
+ */
+public class EffectCache
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** The most bytes of pixels to keep. */
+	private final long maxBytes;
+
+	/** The DiskEffectCache to ask on a miss, or null. */
+	private final DiskEffectCache disk;
+
+	/** The results kept, from the one used least recently to the one used
+	 * 	most recently. */
+	private final LinkedHashMap<Key, Picture> results =
+		new LinkedHashMap<Key, Picture>(16, 0.75f, true);
+
+	/** Bytes of pixels kept. */
+	private long bytes;
+
+	/** Number of calls that found their result kept. */
+	private long hits;
+
+	/** Number of calls that had to run their effect. */
+	private long misses;
+
+	/** Number of results dropped to make room. */
+	private long evictions;
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * A constructor that takes the most bytes of pixels to keep.
+	 *
+	 * @param maxBytes The most bytes of pixels to keep, at 4 bytes a pixel.
+	 *
+	 * @throws IllegalArgumentException If maxBytes is negative.
+	 */
+	public EffectCache(long maxBytes) {
+		this(maxBytes, null);
+	}
+
+	/**
+	 * A constructor that takes the most bytes of pixels to keep, and a
+	 * 	DiskEffectCache to ask for results not kept in memory.
+	 *
+	 * @param maxBytes The most bytes of pixels to keep, at 4 bytes a pixel.
+	 * @param disk The DiskEffectCache, or null.
+	 *
+	 * @throws IllegalArgumentException If maxBytes is negative.
+	 */
+	public EffectCache(long maxBytes, DiskEffectCache disk) {
+		if (maxBytes < 0)
+			throw new IllegalArgumentException(
+					"An EffectCache cannot keep " + maxBytes + " bytes.");
+		this.maxBytes = maxBytes;
+		this.disk = disk;
+	}
+
+	/////////////////////////////// Methods ///////////////////////////////////
+
+	/**
+	 * Returns the result of an effect on a picture, running the effect only
+	 * 	if its result is not kept already.
+	 *
+	 * @param source The picture to run the effect on.
+	 * @param effect The name of the effect.
+	 * @param compute Runs the effect on a picture and returns the result.
+	 * 	It is given source, and must not change it.
+	 * @param parameters The parameters of the effect, which must have
+	 * 	equals and hashCode methods that go by their values.
+	 *
+	 * @return A new copy of the result.
+	 */
+	public Picture apply(Picture source, String effect,
+			UnaryOperator<Picture> compute, Object... parameters) {
+		Key key = new Key(source.contentHash(), effect, parameters);
+		Picture result;
+		synchronized (this) {
+			result = results.get(key);
+			if (result != null)
+				hits++;
+			else
+				misses++;
+		}
+		if (result == null) {
+			result = disk == null ? compute.apply(source) :
+				disk.apply(source, effect, compute, parameters);
+			result = keep(key, result);
+		}
+		return new Picture(result);
+	}
+
+	/**
+	 * Keeps a result, unless another thread kept one first, and drops the
+	 * 	results used least recently for as long as too many bytes are kept.
+	 *
+	 * @param key The key of the result.
+	 * @param result The result.
+	 *
+	 * @return The result kept for the key, or result if it is too large to
+	 * 	be kept.
+	 */
+	private synchronized Picture keep(Key key, Picture result) {
+		Picture kept = results.get(key);
+		if (kept != null)
+			return kept;
+		long size = bytes(result);
+		if (size > maxBytes)
+			return result;
+
+		// A copy, in case the effect returned a picture that is used elsewhere.
+		kept = new Picture(result);
+		results.put(key, kept);
+		bytes += size;
+		Iterator<Picture> eldest = results.values().iterator();
+		while (bytes > maxBytes) {
+			bytes -= bytes(eldest.next());
+			eldest.remove();
+			evictions++;
+		}
+		return kept;
+	}
+
+	/**
+	 * @param picture A picture.
+	 *
+	 * @return The bytes its pixels take.
+	 */
+	private static long bytes(SimplePicture picture) {
+		return 4L * picture.getWidth() * picture.getHeight();
+	}
+
+	/**
+	 * @see Picture#grayscale
+	 */
+	public Picture grayscale(Picture source) {
+		return apply(source, "grayscale", Picture::grayscale);
+	}
+
+	/**
+	 * @see Picture#negate
+	 */
+	public Picture negate(Picture source) {
+		return apply(source, "negate", Picture::negate);
+	}
+
+	/**
+	 * @see Picture#lighten
+	 */
+	public Picture lighten(Picture source, int amount) {
+		return apply(source, "lighten", p -> p.lighten(amount), amount);
+	}
+
+	/**
+	 * @see Picture#darken
+	 */
+	public Picture darken(Picture source, int amount) {
+		return apply(source, "darken", p -> p.darken(amount), amount);
+	}
+
+	/**
+	 * @see Picture#rotate
+	 */
+	public Picture rotate(Picture source, int rotations) {
+		return apply(source, "rotate", p -> p.rotate(rotations), rotations);
+	}
+
+	/**
+	 * @see Picture#flip
+	 */
+	public Picture flip(Picture source, int axis) {
+		return apply(source, "flip", p -> p.flip(axis), axis);
+	}
+
+	/**
+	 * @see Picture#showEdges
+	 */
+	public Picture showEdges(Picture source, int threshold) {
+		return apply(source, "showEdges", p -> p.showEdgesUncached(threshold),
+				threshold);
+	}
+
+	/**
+	 * @see Picture#convertToAscii
+	 */
+	public Picture convertToAscii(Picture source) {
+		// The result depends on the characters drawn with as well.
+		GlyphSet glyphs = GlyphSet.getDefault();
+		return apply(source, "convertToAscii",
+				p -> new AsciiRenderer(p.getBandExecutor(), glyphs).render(p),
+				glyphs);
+	}
+
+	/**
+	 * @see Picture#blur
+	 */
+	public Picture blur(Picture source, int threshold) {
+		return apply(source, "blur", p -> p.blurUncached(threshold),
+				threshold);
+	}
+
+	/**
+	 * @see Picture#chromaKey
+	 */
+	public Picture chromaKey(Picture source, int xReference, int yReference,
+			Picture background, int threshold) {
+		// The background is known by its content hash, so that the key does not hold on to it.
+		return apply(source, "chromaKey", p -> p.chromaKey(xReference,
+				yReference, background, threshold), xReference, yReference,
+				background.contentHash(), threshold);
+	}
+
+	/**
+	 * @see Picture#paintBucket
+	 */
+	public Picture paintBucket(Picture source, int xReference,
+			int yReference, int threshold, Color newColor) {
+		return apply(source, "paintBucket", p -> p.paintBucket(xReference,
+				yReference, threshold, newColor), xReference, yReference,
+				threshold, newColor);
+	}
+
+	/**
+	 * Drops every result kept. The counters are kept.
+	 */
+	public synchronized void clear() {
+		results.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * @return The DiskEffectCache asked on a miss, or null.
+	 */
+	public DiskEffectCache getDisk() { return disk; }
+
+	/**
+	 * @return The most bytes of pixels to keep.
+	 */
+	public long getMaxBytes() { return maxBytes; }
+
+	/**
+	 * @return The bytes of pixels kept.
+	 */
+	public synchronized long getBytes() { return bytes; }
+
+	/**
+	 * @return The number of results kept.
+	 */
+	public synchronized int size() { return results.size(); }
+
+	/**
+	 * @return The number of calls that found their result kept.
+	 */
+	public synchronized long getHits() { return hits; }
+
+	/**
+	 * @return The number of calls that had to run their effect.
+	 */
+	public synchronized long getMisses() { return misses; }
+
+	/**
+	 * @return The number of results dropped to make room.
+	 */
+	public synchronized long getEvictions() { return evictions; }
+
+	/**
+	 * @return A String with the counters and the bytes kept.
+	 */
+	public synchronized String toString() {
+		return "EffectCache, " + results.size() + " results, " + bytes +
+			" of " + maxBytes + " bytes, " + hits + " hits, " + misses +
+			" misses, " + evictions + " evictions";
+	}
+
+	/**
+	 * The content hash of a picture, the name of an effect, and the
+	 * 	parameters of the effect, which together find its result.
+	 */
+	private static class Key
+	{
+
+		/** The content hash of the picture. */
+		private final long contentHash;
+
+		/** The name of the effect. */
+		private final String effect;
+
+		/** The parameters of the effect. */
+		private final Object[] parameters;
+
+		/**
+		 * A constructor that takes every part of the key.
+		 *
+		 * @param contentHash The content hash of the picture.
+		 * @param effect The name of the effect.
+		 * @param parameters The parameters of the effect.
+		 */
+		Key(long contentHash, String effect, Object[] parameters) {
+			this.contentHash = contentHash;
+			this.effect = effect;
+			this.parameters = parameters.clone();
+		}
+
+		/**
+		 * @return True, if obj is a Key with equal parts.
+		 */
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key key = (Key) obj;
+			return contentHash == key.contentHash &&
+				effect.equals(key.effect) &&
+				Arrays.equals(parameters, key.parameters);
+		}
+
+		/**
+		 * @return A hash code made from every part.
+		 */
+		public int hashCode() {
+			return (Long.hashCode(contentHash) * 31 + effect.hashCode()) * 31 +
+				Arrays.hashCode(parameters);
+		}
+
+	} // End of Key class
+
+} // End of EffectCache class
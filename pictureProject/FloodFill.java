@@ -0,0 +1,215 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+
+/**
+ * Class that finds the region a flood fill covers. Starting from a pixel,
+ * 	the region grows into every neighbor, including diagonal neighbors,
+ * 	whose color passes a test, until no neighbor left does.
+ *
+ * 	The region is found one span at a time: a span is a run of passing
+ * 	pixels on a single row, grown left and right as far as it goes. Each
+ * 	span then looks at the rows above and below it, one pixel further on
+ * 	either side for the diagonals, and leaves a seed for every run of
+ * 	passing pixels found there. Pixels already in the region are kept in a
+ * 	BitSet, and the seeds on an int stack, so the time taken grows only
+ * 	with the size of the region.
+ */
+public class FloodFill
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** The picture being filled. */
+	private SimplePicture picture;
+
+	/** The test a pixel's packed ARGB value must pass to be filled. */
+	private IntPredicate inside;
+
+	/** Width of the picture. */
+	private int width;
+
+	/** Height of the picture. */
+	private int height;
+
+	/** The pixels in the region, by index y * width + x. */
+	private BitSet filled;
+
+	/** The raster of the picture, or null if its pixels are tiled or kept
+	 * 	off the heap, and are read a row at a time instead. */
+	private int[] raster;
+
+	/** The last rows read, when there is no raster; row y is kept at index
+	 * 	y % 3, so a row and the rows above and below it are all kept. */
+	private int[][] rows;
+
+	/** The y-coordinate of each row kept in rows, or -1. */
+	private int[] rowYs;
+
+	/** Seeds still to grow into spans, by index y * width + x. */
+	private int[] stack = new int[64];
+
+	/** Number of seeds on the stack. */
+	private int stackSize;
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * A constructor that takes the picture to fill and the test a pixel's
+	 * 	color must pass to be filled.
+	 *
+	 * @param picture The SimplePicture to fill; it is only read.
+	 * @param inside The test, given the packed ARGB value of a pixel.
+	 */
+	private FloodFill(SimplePicture picture, IntPredicate inside) {
+		this.picture = picture;
+		this.inside = inside;
+		width = picture.getWidth();
+		height = picture.getHeight();
+		filled = new BitSet(width * height);
+		raster = picture.getFlatRaster();
+		if (raster == null) {
+			rows = new int[3][width];
+			rowYs = new int[] { -1, -1, -1 };
+		}
+	}
+
+	/////////////////////////////// Methods ///////////////////////////////////
+
+	/**
+	 * Finds the region a flood fill starting at the pixel provided covers.
+	 * 	The starting pixel is always part of the region, even if its own
+	 * 	color does not pass the test.
+	 *
+	 * @param picture The SimplePicture to fill; it is only read.
+	 * @param x The x-coordinate of the starting pixel.
+	 * @param y The y-coordinate of the starting pixel.
+	 * @param inside The test a pixel must pass to be filled, given its
+	 * 	packed ARGB value.
+	 *
+	 * @return The pixels of the region, by index y * width + x.
+	 */
+	public static BitSet region(SimplePicture picture, int x, int y,
+			IntPredicate inside) {
+		// Reading the start pixel checks that it is inside the picture.
+		int start = picture.getBasicPixel(x, y);
+		FloodFill fill = new FloodFill(picture, inside);
+
+		if (inside.test(start)) {
+			fill.push(y * fill.width + x);
+			fill.run();
+		} else {
+			// A start that fails the test cannot reach any neighbor.
+			fill.filled.set(y * fill.width + x);
+		}
+		return fill.filled;
+	}
+
+	/**
+	 * Grows spans from the seeds on the stack until none are left.
+	 */
+	private void run() {
+		while (stackSize > 0) {
+			int seed = stack[--stackSize];
+			if (filled.get(seed))
+				continue;
+
+			int y = seed / width;
+			int rowStart = y * width;
+			int[] pixels = pixels(y);
+			int rasterStart = pixelStart(y);
+			int left = seed - rowStart;
+			int right = left;
+
+			while (left > 0 && passes(pixels, rowStart, rasterStart, left - 1))
+				left--;
+			while (right < width - 1 &&
+					passes(pixels, rowStart, rasterStart, right + 1))
+				right++;
+			filled.set(rowStart + left, rowStart + right + 1);
+
+			if (y > 0)
+				seedRow(y - 1, left, right);
+			if (y < height - 1)
+				seedRow(y + 1, left, right);
+		}
+	}
+
+	/**
+	 * @param y The y-coordinate of a row.
+	 *
+	 * @return The array holding the row: the raster, or a copy of the row
+	 * 	read from the picture, which is left as it is.
+	 */
+	private int[] pixels(int y) {
+		if (raster != null)
+			return raster;
+		int slot = y % 3;
+		if (rowYs[slot] != y) {
+			picture.getRow(y, rows[slot]);
+			rowYs[slot] = y;
+		}
+		return rows[slot];
+	}
+
+	/**
+	 * @param y The y-coordinate of a row.
+	 *
+	 * @return The index of the first pixel of the row in pixels(y).
+	 */
+	private int pixelStart(int y) {
+		return raster != null ? picture.rasterIndex(0, y) : 0;
+	}
+
+	/**
+	 * Pushes a seed for every run of passing pixels on a row that touches
+	 * 	a span, diagonally included.
+	 *
+	 * @param y The row to look at.
+	 * @param left The leftmost x-coordinate of the span.
+	 * @param right The rightmost x-coordinate of the span.
+	 */
+	private void seedRow(int y, int left, int right) {
+		int rowStart = y * width;
+		int[] pixels = pixels(y);
+		int rasterStart = pixelStart(y);
+		int end = Math.min(width - 1, right + 1);
+		boolean inRun = false;
+
+		for (int x = Math.max(0, left - 1); x <= end; x++) {
+			if (!passes(pixels, rowStart, rasterStart, x))
+				inRun = false;
+			else if (!inRun) {
+				// One seed grows into the whole run.
+				push(rowStart + x);
+				inRun = true;
+			}
+		}
+	}
+
+	/**
+	 * @param pixels The array holding the row; see pixels.
+	 * @param rowStart The region index of the first pixel of the row.
+	 * @param rasterStart The index of the first pixel of the row in pixels.
+	 * @param x The x-coordinate of the pixel.
+	 *
+	 * @return True, if the pixel is not in the region yet and passes the
+	 * 	test.
+	 */
+	private boolean passes(int[] pixels, int rowStart, int rasterStart,
+			int x) {
+		return !filled.get(rowStart + x) && inside.test(pixels[rasterStart + x]);
+	}
+
+	/**
+	 * Pushes a seed onto the stack, growing it if needed.
+	 *
+	 * @param index The seed, by index y * width + x.
+	 */
+	private void push(int index) {
+		if (stackSize == stack.length)
+			stack = Arrays.copyOf(stack, stackSize * 2);
+		stack[stackSize++] = index;
+	}
+
+} // End of FloodFill class
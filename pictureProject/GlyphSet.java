@@ -0,0 +1,366 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Class that holds the characters ASCII art is drawn with: one picture of
+ * 	the same size for each character, from the darkest to the lightest.
+ * 	The pixels of every character are kept in a single int array, packed
+ * 	as in the raster of a SimplePicture, one character after the other.
+ *
+ * 	The standard set is the 13 characters of Picture.convertToAscii. It is
+ * 	read from glyphs.dat, a file of 2,600 gray values made from the 13
+ * 	BMP files by running this class, which takes much less time than
+ * 	decoding the BMP files with ImageIO; the BMP files are only decoded,
+ * 	in parallel, if glyphs.dat cannot be found. The standard set is loaded
+ * 	when first needed, by a holder class, so that however many threads
+ * 	ask for it at once, it is only loaded once and none of them can see it
+ * 	half loaded.
+ *
+ * 	Another set may be used instead with setDefault, by everything that
+ * 	draws ASCII art without being handed a GlyphSet.
+ */
+public class GlyphSet
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** The characters of the standard set, from darkest to lightest. */
+	private static final String STANDARD_CHARACTERS = "#@&$%|!;:'`. ";
+
+	/** The files of the characters of the standard set. */
+	private static final String[] STANDARD_FILES = { "hash.bmp", "at.bmp",
+		"ampersand.bmp", "dollar.bmp", "percent.bmp", "bar.bmp",
+		"exclamation.bmp", "semicolon.bmp", "colon.bmp", "apostrophe.bmp",
+		"grave.bmp", "dot.bmp", "space.bmp" };
+
+	/** The file the standard set is read from. */
+	private static final String STANDARD_RESOURCE = "glyphs.dat";
+
+	/** The first int of glyphs.dat, "GLYF". */
+	private static final int MAGIC = 0x474c5946;
+
+	/** The set to use instead of the standard set, or null. */
+	private static volatile GlyphSet replacement;
+
+	/** The characters, from darkest to lightest. */
+	private final String characters;
+
+	/** Width of every character, in pixels. */
+	private final int width;
+
+	/** Height of every character, in pixels. */
+	private final int height;
+
+	/** The pixels of every character; see getPixels. */
+	private final int[] pixels;
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * A constructor that takes the characters and their pictures. The
+	 * 	pixels are copied.
+	 *
+	 * @param characters The characters, from darkest to lightest.
+	 * @param glyphs The picture of each character, all of the same size.
+	 *
+	 * @throws IllegalArgumentException If there is not one picture for each
+	 * 	character, or the pictures are not all of the same size.
+	 */
+	public GlyphSet(String characters, SimplePicture... glyphs) {
+		this(characters, glyphs.length == 0 ? 0 : glyphs[0].getWidth(),
+				glyphs.length == 0 ? 0 : glyphs[0].getHeight());
+		if (glyphs.length != characters.length())
+			throw new IllegalArgumentException("There are " +
+					characters.length() + " characters, but " +
+					glyphs.length + " pictures.");
+		for (SimplePicture glyph : glyphs)
+			if (glyph.getWidth() != width || glyph.getHeight() != height)
+				throw new IllegalArgumentException(
+						"The pictures are not all of the same size.");
+		for (int level = 0; level < glyphs.length; level++)
+			copyGlyph(glyphs[level], level);
+	}
+
+	/**
+	 * A constructor for a set whose pixels are filled in afterwards.
+	 *
+	 * @param characters The characters, from darkest to lightest.
+	 * @param width The width of every character.
+	 * @param height The height of every character.
+	 */
+	private GlyphSet(String characters, int width, int height) {
+		if (characters.isEmpty() || width <= 0 || height <= 0)
+			throw new IllegalArgumentException(
+					"A GlyphSet needs at least one character.");
+		this.characters = characters;
+		this.width = width;
+		this.height = height;
+		pixels = new int[characters.length() * width * height];
+	}
+
+	/////////////////////////////// Methods ///////////////////////////////////
+
+	/**
+	 * @return The set of the 13 characters of Picture.convertToAscii.
+	 */
+	public static GlyphSet getStandard() { return Standard.GLYPHS; }
+
+	/**
+	 * @return The set to draw with when none is given: the one last handed
+	 * 	to setDefault, or the standard set.
+	 */
+	public static GlyphSet getDefault() {
+		GlyphSet glyphs = replacement;
+		return glyphs != null ? glyphs : getStandard();
+	}
+
+	/**
+	 * Changes the set to draw with when none is given. Renderers that were
+	 * 	already made keep the set they were made with.
+	 *
+	 * @param glyphs The new set, or null for the standard set.
+	 */
+	public static void setDefault(GlyphSet glyphs) {
+		replacement = glyphs;
+	}
+
+	/**
+	 * @return The number of characters.
+	 */
+	public int size() { return characters.length(); }
+
+	/**
+	 * @return The width of every character.
+	 */
+	public int getWidth() { return width; }
+
+	/**
+	 * @return The height of every character.
+	 */
+	public int getHeight() { return height; }
+
+	/**
+	 * @return The characters, from darkest to lightest.
+	 */
+	public String getCharacters() { return characters; }
+
+	/**
+	 * @param level A level, from 0 to size() - 1.
+	 *
+	 * @return The character for the level.
+	 */
+	public char charAt(int level) { return characters.charAt(level); }
+
+	/**
+	 * @param grayValue A gray value, from 0 to 255.
+	 *
+	 * @return The level of gray for the value. Each level covers 256 /
+	 * 	size() gray values, and the last level also covers whatever is
+	 * 	left: for the standard set, 19 values each, and 28 for a space.
+	 */
+	public int level(int grayValue) {
+		return Math.min(grayValue / (256 / Math.min(size(), 256)),
+				size() - 1);
+	}
+
+	/**
+	 * @param level A level, from 0 to size() - 1.
+	 *
+	 * @return A new Picture of the character for the level.
+	 */
+	public Picture getGlyph(int level) {
+		Picture glyph = new Picture(width, height);
+		int[] row = new int[width];
+		for (int j = 0; j < height; j++) {
+			System.arraycopy(pixels, rowIndex(level, j), row, 0, width);
+			glyph.setRow(j, row);
+		}
+		return glyph;
+	}
+
+	/**
+	 * @return The pixels of every character, row after row and character
+	 * 	after character; see rowIndex. The array is shared, and must not
+	 * 	be changed.
+	 */
+	int[] getPixels() { return pixels; }
+
+	/**
+	 * @param level A level, from 0 to size() - 1.
+	 * @param j The y-coordinate of a row of the character.
+	 *
+	 * @return The index in getPixels() of the first pixel of the row.
+	 */
+	int rowIndex(int level, int j) {
+		return (level * height + j) * width;
+	}
+
+	/**
+	 * Copies the pixels of a picture in as the character for a level.
+	 *
+	 * @param glyph The picture, of the size of every character.
+	 * @param level The level.
+	 */
+	private void copyGlyph(SimplePicture glyph, int level) {
+		int[] row = new int[width];
+		for (int j = 0; j < height; j++) {
+			glyph.getRow(j, row);
+			System.arraycopy(row, 0, pixels, rowIndex(level, j), width);
+		}
+	}
+
+	/**
+	 * @return The standard set, read from glyphs.dat if it can be found,
+	 * 	and decoded from the BMP files otherwise.
+	 */
+	private static GlyphSet loadStandard() {
+		InputStream in = GlyphSet.class.getResourceAsStream(
+				STANDARD_RESOURCE);
+		if (in != null) {
+			try {
+				try {
+					return read(in);
+				} finally {
+					in.close();
+				}
+			} catch (IOException ex) {
+				// Fall back on the BMP files below.
+			}
+		}
+		return decodeStandard();
+	}
+
+	/**
+	 * @return The standard set, decoded from the BMP files in parallel.
+	 */
+	private static GlyphSet decodeStandard() {
+		Picture first = Picture.loadPicture(STANDARD_FILES[0]);
+		GlyphSet glyphs = new GlyphSet(STANDARD_CHARACTERS, first.getWidth(),
+				first.getHeight());
+		glyphs.copyGlyph(first, 0);
+		IntStream.range(1, STANDARD_FILES.length).parallel().forEach(
+				level -> glyphs.copyGlyph(
+						Picture.loadPicture(STANDARD_FILES[level]), level));
+		return glyphs;
+	}
+
+	/**
+	 * Reads a set written by write.
+	 *
+	 * @param in The stream to read from.
+	 *
+	 * @return The set.
+	 *
+	 * @throws IOException If the stream cannot be read, or does not hold a
+	 * 	set.
+	 */
+	private static GlyphSet read(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(
+				new BufferedInputStream(in));
+		if (data.readInt() != MAGIC)
+			throw new IOException("Not a glyph file.");
+		int width = data.readUnsignedShort();
+		int height = data.readUnsignedShort();
+		GlyphSet glyphs = new GlyphSet(data.readUTF(), width, height);
+		byte[] grays = new byte[glyphs.pixels.length];
+		data.readFully(grays);
+		for (int index = 0; index < grays.length; index++) {
+			int gray = grays[index] & 0xff;
+			glyphs.pixels[index] = 0xff000000 | (gray << 16) | (gray << 8) |
+				gray;
+		}
+		return glyphs;
+	}
+
+	/**
+	 * Writes this set, whose pixels must all be opaque grays, in the form
+	 * 	of glyphs.dat: "GLYF", the width and height, the characters, and
+	 * 	then one byte of gray for every pixel.
+	 *
+	 * @param out The stream to write to.
+	 *
+	 * @throws IOException If the stream cannot be written to.
+	 * @throws IllegalStateException If a pixel is not an opaque gray.
+	 */
+	private void write(DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeShort(width);
+		out.writeShort(height);
+		out.writeUTF(characters);
+		for (int pixel : pixels) {
+			if ((pixel >>> 24) != 0xff ||
+					((pixel >> 16) & 0xff) != (pixel & 0xff) ||
+					((pixel >> 8) & 0xff) != (pixel & 0xff))
+				throw new IllegalStateException(
+						"Only opaque grays can be written.");
+			out.writeByte(pixel);
+		}
+	}
+
+	/**
+	 * @return True, if obj is a GlyphSet with the same characters, of the
+	 * 	same size, with the same pixels.
+	 */
+	public boolean equals(Object obj) {
+		if (!(obj instanceof GlyphSet))
+			return false;
+		GlyphSet glyphs = (GlyphSet) obj;
+		return characters.equals(glyphs.characters) &&
+			width == glyphs.width && height == glyphs.height &&
+			Arrays.equals(pixels, glyphs.pixels);
+	}
+
+	/**
+	 * @return A hash code made from the characters and their pixels, the
+	 * 	same in every run.
+	 */
+	public int hashCode() {
+		return characters.hashCode() * 31 + Arrays.hashCode(pixels);
+	}
+
+	/**
+	 * @return A String naming this GlyphSet.
+	 */
+	public String toString() {
+		return "GlyphSet \"" + characters + "\" of " + width + " by " +
+			height + " pixels";
+	}
+
+	/**
+	 * Decodes the BMP files of the standard set and writes them to
+	 * 	glyphs.dat, or to the file named, for getStandard to read.
+	 *
+	 * @param args The name of the file to write, if not glyphs.dat.
+	 *
+	 * @throws IOException If the file cannot be written.
+	 */
+	public static void main(String[] args) throws IOException {
+		String fileName = args.length > 0 ? args[0] : STANDARD_RESOURCE;
+		DataOutputStream out = new DataOutputStream(
+				new FileOutputStream(fileName));
+		try {
+			decodeStandard().write(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Holder of the standard set. The JVM loads a class only once, and
+	 * 	makes every thread wait until it is done, so no locking is needed.
+	 */
+	private static class Standard
+	{
+
+		/** The standard set. */
+		static final GlyphSet GLYPHS = loadStandard();
+
+	} // End of Standard class
+
+} // End of GlyphSet class
@@ -0,0 +1,554 @@
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.Consumer;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Class that runs the effects of Picture on the Picture itself, instead of
+ * 	on a new copy. Every effect of Picture is constructive, so a chain of
+ * 	effects pays for a whole new Picture at every step; when the original
+ * 	is not needed afterwards, the same chain can be run in place:
+ *
+ * 	picture.inPlace().grayscale().blur(2).showEdges(10)
+ *
+ * 	Each effect gives the Picture exactly the pixels the effect of the
+ * 	same name would have returned. Effects that look at neighboring pixels
+ * 	keep only the few original rows they still need in rolling row
+ * 	buffers; blur keeps threshold + 1 rows at most, showEdges two. The
+ * 	rotations and flips that turn rows into columns can only be done in
+ * 	place when the Picture is square; otherwise the Picture takes over the
+ * 	pixels of a rotated copy.
+ *
+ * 	Each method returns this InPlaceEffects, so that the calls can be
+ * 	chained.
+ */
+public class InPlaceEffects
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** The Picture the effects change. */
+	private final Picture picture;
+
+	/** The BandExecutor to run on, or null to use that of the Picture. */
+	private final BandExecutor executor;
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * A constructor that takes the Picture to change.
+	 *
+	 * @param picture The Picture to change.
+	 */
+	public InPlaceEffects(Picture picture) {
+		this(picture, null);
+	}
+
+	/**
+	 * A constructor that takes the Picture to change and the BandExecutor
+	 * 	to run on, for the constructive effects of Picture, which change a
+	 * 	new copy but run on the BandExecutor of the original.
+	 *
+	 * @param picture The Picture to change.
+	 * @param executor The BandExecutor to run on, or null to use that of
+	 * 	the Picture.
+	 */
+	InPlaceEffects(Picture picture, BandExecutor executor) {
+		this.picture = picture;
+		this.executor = executor;
+	}
+
+	/////////////////////////////// Methods ///////////////////////////////////
+
+	/**
+	 * @return The Picture the effects change.
+	 */
+	public Picture getPicture() { return picture; }
+
+	/**
+	 * @return The BandExecutor to run on.
+	 */
+	private BandExecutor executor() {
+		return executor != null ? executor : picture.getBandExecutor();
+	}
+
+	/**
+	 * Changes every row of the Picture through a copy of the row, so that
+	 * 	pixels kept off the heap stay where they are.
+	 *
+	 * @param operation The change to make to each row, given a copy of
+	 * 	the row to change in place.
+	 */
+	private void mapRows(Consumer<int[]> operation) {
+		int width = picture.getWidth();
+
+		executor().run(picture.getHeight(), (fromY, toY) -> {
+			int[] row = new int[width];
+			for (int y = fromY; y < toY; y++) {
+				operation.accept(picture.getRow(y, row));
+				picture.setRow(y, row);
+			}
+		});
+	}
+
+	/**
+	 * Applies a function to every pixel, as for Picture.mapPixels.
+	 *
+	 * @param operator The function to apply.
+	 *
+	 * @return This InPlaceEffects.
+	 */
+	public InPlaceEffects mapPixels(IntUnaryOperator operator) {
+		int width = picture.getWidth();
+
+		if (picture.isOffHeap()) {
+			mapRows(row -> {
+				for (int x = 0; x < width; x++)
+					row[x] = operator.applyAsInt(row[x]);
+			});
+			return this;
+		}
+
+		int[] raster = picture.getRaster();
+		executor().run(picture.getHeight(), (fromY, toY) -> {
+			for (int y = fromY; y < toY; y++) {
+				int index = picture.rasterIndex(0, y);
+				for (int end = index + width; index < end; index++)
+					raster[index] = operator.applyAsInt(raster[index]);
+			}
+		});
+		picture.pixelsChanged();
+		return this;
+	}
+
+	/**
+	 * Applies point operations described by lookup tables, as for
+	 * 	Picture.applyLut.
+	 *
+	 * @param luts The ChannelLuts to apply, in order.
+	 *
+	 * @return This InPlaceEffects.
+	 */
+	public InPlaceEffects applyLut(ChannelLut... luts) {
+		int width = picture.getWidth();
+
+		if (picture.isOffHeap()) {
+			mapRows(row -> {
+				for (ChannelLut lut : luts)
+					lut.apply(row, 0, width);
+			});
+			return this;
+		}
+
+		int[] raster = picture.getRaster();
+		executor().run(picture.getHeight(), (fromY, toY) -> {
+			for (int y = fromY; y < toY; y++) {
+				int index = picture.rasterIndex(0, y);
+				for (ChannelLut lut : luts)
+					lut.apply(raster, index, index + width);
+			}
+		});
+		picture.pixelsChanged();
+		return this;
+	}
+
+	/**
+	 * @return This InPlaceEffects, after Picture.grayscale.
+	 */
+	public InPlaceEffects grayscale() {
+		return applyLut(ChannelLut.grayscale());
+	}
+
+	/**
+	 * @return This InPlaceEffects, after Picture.negate.
+	 */
+	public InPlaceEffects negate() {
+		return applyLut(ChannelLut.negate());
+	}
+
+	/**
+	 * @param amount The amount to add to every color value.
+	 *
+	 * @return This InPlaceEffects, after Picture.lighten.
+	 */
+	public InPlaceEffects lighten(int amount) {
+		return applyLut(ChannelLut.shift(amount, amount, amount));
+	}
+
+	/**
+	 * @param amount The amount to take from every color value.
+	 *
+	 * @return This InPlaceEffects, after Picture.darken.
+	 */
+	public InPlaceEffects darken(int amount) {
+		return applyLut(ChannelLut.shift(-amount, -amount, -amount));
+	}
+
+	/**
+	 * @param amount The amount to add to red.
+	 *
+	 * @return This InPlaceEffects, after Picture.addRed.
+	 */
+	public InPlaceEffects addRed(int amount) {
+		return applyLut(ChannelLut.shift(amount, 0, 0));
+	}
+
+	/**
+	 * @param amount The amount to add to green.
+	 *
+	 * @return This InPlaceEffects, after Picture.addGreen.
+	 */
+	public InPlaceEffects addGreen(int amount) {
+		return applyLut(ChannelLut.shift(0, amount, 0));
+	}
+
+	/**
+	 * @param amount The amount to add to blue.
+	 *
+	 * @return This InPlaceEffects, after Picture.addBlue.
+	 */
+	public InPlaceEffects addBlue(int amount) {
+		return applyLut(ChannelLut.shift(0, 0, amount));
+	}
+
+	/**
+	 * Replaces the pixels close in color to a reference pixel with those
+	 * 	of a background, as for Picture.chromaKey. Each pixel is compared
+	 * 	before it is replaced, so the row being worked on is the only
+	 * 	buffer needed.
+	 *
+	 * @param xReference The x-coordinate of the reference pixel.
+	 * @param yReference The y-coordinate of the reference pixel.
+	 * @param background The Picture to take the replacements from.
+	 * @param threshold Threshold within which to replace pixels.
+	 *
+	 * @return This InPlaceEffects.
+	 */
+	public InPlaceEffects chromaKey(int xReference, int yReference,
+			Picture background, int threshold) {
+		int base = picture.getBasicPixel(xReference, yReference);
+		ColorThreshold limit = new ColorThreshold(threshold);
+		int width = Math.min(picture.getWidth(), background.getWidth());
+		int height = Math.min(picture.getHeight(), background.getHeight());
+
+		executor().run(height, (fromY, toY) -> {
+			int[] row = new int[picture.getWidth()];
+			for (int y = fromY; y < toY; y++) {
+				picture.getRow(y, row);
+				boolean changed = false;
+				for (int x = 0; x < width; x++)
+					if (limit.isWithin(row[x], base)) {
+						row[x] = (row[x] & 0xff000000) |
+							(background.getBasicPixel(x, y) & 0x00ffffff);
+						changed = true;
+					}
+				// Rows with nothing to replace are left alone, so shared
+				// pixels stay shared.
+				if (changed)
+					picture.setRow(y, row);
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Colors the region around a reference pixel, as for
+	 * 	Picture.paintBucket. The region is found before any pixel is
+	 * 	colored, so it is the region of the Picture as it was.
+	 *
+	 * @param xReference The x-coordinate of the reference pixel.
+	 * @param yReference The y-coordinate of the reference pixel.
+	 * @param threshold Threshold within which to color pixels.
+	 * @param newColor The color to color them with.
+	 *
+	 * @return This InPlaceEffects.
+	 */
+	public InPlaceEffects paintBucket(int xReference, int yReference,
+			int threshold, Color newColor) {
+		int base = picture.getBasicPixel(xReference, yReference);
+		int newRGB = newColor.getRGB() & 0x00ffffff;
+		int width = picture.getWidth();
+		ColorThreshold limit = new ColorThreshold(threshold);
+		BitSet region = FloodFill.region(picture, xReference, yReference,
+				value -> limit.isWithin(value, base));
+
+		for (int i = region.nextSetBit(0); i >= 0; i = region.nextSetBit(i + 1)) {
+			int x = i % width, y = i / width;
+			picture.setBasicPixel(x, y,
+					(picture.getBasicPixel(x, y) & 0xff000000) | newRGB);
+		}
+		return this;
+	}
+
+	/**
+	 * Turns the Picture into black edges on white, as for
+	 * 	Picture.showEdges. Each pixel is compared with the original pixels
+	 * 	to its west and north, so the original of the row above is kept
+	 * 	in a buffer, and that of the current row in another.
+	 *
+	 * @param threshold Threshold beyond which a pixel is an edge.
+	 *
+	 * @return This InPlaceEffects.
+	 */
+	public InPlaceEffects showEdges(int threshold) {
+		int width = picture.getWidth();
+		int black = 0xff000000;
+		int white = 0xffffffff;
+		ColorThreshold limit = new ColorThreshold(threshold);
+		int[] previous = new int[width];
+		int[] current = new int[width];
+		int[] edges = new int[width];
+
+		for (int y = 0; y < picture.getHeight(); y++) {
+			picture.getRow(y, current);
+			for (int x = 0; x < width; x++) {
+				int value = current[x];
+				boolean edge = (x > 0 && limit.isBeyond(value, current[x - 1])) ||
+						(y > 0 && limit.isBeyond(value, previous[x]));
+				edges[x] = edge ? black : white;
+			}
+			picture.setRow(y, edges);
+
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+		return this;
+	}
+
+	/**
+	 * Blurs the Picture, as for Picture.blur. Every channel of every
+	 * 	column keeps its sum over the rows of the blurring square; moving
+	 * 	down a row adds the row entering the square, which is still
+	 * 	original, and takes away the row leaving it. Rows that have been
+	 * 	blurred already are taken away from a ring of the threshold + 1
+	 * 	original rows above the current one.
+	 *
+	 * @param threshold Half the size of the blurring square.
+	 *
+	 * @return This InPlaceEffects.
+	 */
+	public InPlaceEffects blur(int threshold) {
+		if (threshold < 0)
+			throw new IllegalArgumentException("The blur threshold cannot be negative.");
+		int width = picture.getWidth();
+		int height = picture.getHeight();
+		int radius = Math.min(threshold, Math.max(width, height));
+		int[][] ring = new int[Math.min(radius + 1, height)][width];
+		int[][] columnSums = new int[4][width];
+		long[] runningSums = new long[width + 1];
+		int[] row = new int[width];
+		int[] blurred = new int[width];
+
+		for (int y = 0; y < Math.min(radius, height); y++)
+			addRow(columnSums, picture.getRow(y, row), 1);
+
+		for (int y = 0; y < height; y++) {
+			if (y + radius < height)
+				addRow(columnSums, picture.getRow(y + radius, row), 1);
+			// The ring slot of the row leaving the square is the one the
+			// current row goes into.
+			int[] original = ring[y % ring.length];
+			if (y - radius - 1 >= 0)
+				addRow(columnSums, original, -1);
+			picture.getRow(y, original);
+
+			int rows = Math.min(height - 1, y + radius) -
+				Math.max(0, y - radius) + 1;
+			Arrays.fill(blurred, 0);
+			for (int channel = 0; channel < 4; channel++) {
+				int[] sums = columnSums[channel];
+				for (int x = 0; x < width; x++)
+					runningSums[x + 1] = runningSums[x] + sums[x];
+				for (int x = 0; x < width; x++) {
+					int left = Math.max(0, x - radius);
+					int right = Math.min(width - 1, x + radius);
+					blurred[x] = (blurred[x] << 8) | (int) ((runningSums[right + 1] -
+							runningSums[left]) / ((right - left + 1) * rows));
+				}
+			}
+			picture.setRow(y, blurred);
+		}
+		return this;
+	}
+
+	/**
+	 * Adds the channels of a row to the sums of the columns, or takes
+	 * 	them away.
+	 *
+	 * @param columnSums The sums of alpha, red, green, and blue of every
+	 * 	column.
+	 * @param row The row.
+	 * @param sign 1 to add the row, or -1 to take it away.
+	 */
+	private static void addRow(int[][] columnSums, int[] row, int sign) {
+		for (int x = 0; x < row.length; x++) {
+			int value = row[x];
+			columnSums[0][x] += sign * (value >>> 24);
+			columnSums[1][x] += sign * ((value >> 16) & 0xff);
+			columnSums[2][x] += sign * ((value >> 8) & 0xff);
+			columnSums[3][x] += sign * (value & 0xff);
+		}
+	}
+
+	/**
+	 * Turns the Picture into ASCII art, as for Picture.convertToAscii, with
+	 * 	an AsciiRenderer. The averages of the chunks of a band of 20 rows
+	 * 	are all taken before any character is drawn over them.
+	 *
+	 * @return This InPlaceEffects.
+	 */
+	public InPlaceEffects convertToAscii() {
+		new AsciiRenderer(executor()).render(picture, picture);
+		return this;
+	}
+
+	/**
+	 * Rotates the Picture, as for Picture.rotate.
+	 *
+	 * @param rotations The number of times to rotate clockwise by 90
+	 * 	degrees.
+	 *
+	 * @return This InPlaceEffects.
+	 */
+	public InPlaceEffects rotate(int rotations) {
+		switch (((rotations % 4) + 4) % 4) {
+		case 1:
+			// Turning rows into columns, then reversing the rows.
+			return transpose(rotations) ? reverseRows() : this;
+		case 2:
+			return reverseRows().swapRows();
+		case 3:
+			return transpose(rotations) ? swapRows() : this;
+		default:
+			return this;
+		}
+	}
+
+	/**
+	 * Flips the Picture, as for Picture.flip.
+	 *
+	 * @param axis The axis to flip about.
+	 *
+	 * @return This InPlaceEffects.
+	 */
+	public InPlaceEffects flip(int axis) {
+		switch (axis) {
+		case Picture.HORIZONTAL:
+			return swapRows();
+		case Picture.VERTICAL:
+			return reverseRows();
+		case Picture.FORWARD_DIAGONAL:
+			return transposeForFlip(axis) ? rotate(2) : this;
+		case Picture.BACKWARD_DIAGONAL:
+			transposeForFlip(axis);
+			return this;
+		default:
+			return this;
+		}
+	}
+
+	/**
+	 * Swaps the rows of the Picture top to bottom.
+	 *
+	 * @return This InPlaceEffects.
+	 */
+	private InPlaceEffects swapRows() {
+		int height = picture.getHeight();
+		int[] top = new int[picture.getWidth()];
+		int[] bottom = new int[picture.getWidth()];
+		for (int y = 0; y < height / 2; y++) {
+			picture.getRow(y, top);
+			picture.getRow(height - 1 - y, bottom);
+			picture.setRow(y, bottom);
+			picture.setRow(height - 1 - y, top);
+		}
+		return this;
+	}
+
+	/**
+	 * Reverses every row of the Picture, left to right.
+	 *
+	 * @return This InPlaceEffects.
+	 */
+	private InPlaceEffects reverseRows() {
+		int width = picture.getWidth();
+		mapRows(row -> {
+			for (int left = 0, right = width - 1; left < right; left++, right--) {
+				int swap = row[left];
+				row[left] = row[right];
+				row[right] = swap;
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Turns the rows of a square Picture into its columns, or, if the
+	 * 	Picture is not square, has it take over the pixels of a rotated
+	 * 	copy instead.
+	 *
+	 * @param rotations The rotation asked for, to make the copy with.
+	 *
+	 * @return True, if the Picture was transposed and the rest of the
+	 * 	rotation is still to be done.
+	 */
+	private boolean transpose(int rotations) {
+		if (transposeSquare())
+			return true;
+		picture.takePixels(picture.rotate(rotations));
+		return false;
+	}
+
+	/**
+	 * As transpose, for a flip about a diagonal.
+	 *
+	 * @param axis The flip asked for, to make the copy with.
+	 *
+	 * @return True, if the Picture was transposed and the rest of the flip
+	 * 	is still to be done.
+	 */
+	private boolean transposeForFlip(int axis) {
+		if (transposeSquare())
+			return true;
+		picture.takePixels(picture.flip(axis));
+		return false;
+	}
+
+	/**
+	 * Swaps every pixel (x, y) of a square Picture with pixel (y, x), one
+	 * 	pair of tiles at a time so that both stay in the cache.
+	 *
+	 * @return True, if the Picture is square and was transposed.
+	 */
+	private boolean transposeSquare() {
+		int size = picture.getWidth();
+		if (size != picture.getHeight())
+			return false;
+
+		int[] raster = picture.getRaster();
+		int tile = RasterTransform.TILE_SIZE;
+		for (int tileY = 0; tileY < size; tileY += tile)
+			for (int tileX = tileY; tileX < size; tileX += tile)
+				for (int y = tileY; y < Math.min(size, tileY + tile); y++)
+					for (int x = Math.max(tileX, y + 1);
+							x < Math.min(size, tileX + tile); x++) {
+						int below = picture.rasterIndex(x, y);
+						int above = picture.rasterIndex(y, x);
+						int swap = raster[below];
+						raster[below] = raster[above];
+						raster[above] = swap;
+					}
+		picture.pixelsChanged();
+		return true;
+	}
+
+	/**
+	 * @return A String with information about the Picture changed.
+	 */
+	public String toString() {
+		return "In place effects on " + picture;
+	}
+
+} // End of InPlaceEffects class
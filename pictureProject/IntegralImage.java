@@ -0,0 +1,276 @@
+import java.util.Arrays;
+
+/**
+ * Class that holds the summed-area table of a picture. For every location
+ * 	(x, y), the table holds the sum of each color component over all of the
+ * 	pixels above and to the left of it. The sum over any rectangle then
+ * 	takes only four lookups, however large the rectangle is:
+ *
+ * 	sum = S(right, bottom) - S(left, bottom) - S(right, top) + S(left, top)
+ *
+ * 	The table is built in a single pass over the picture. It can also hold
+ * 	the sums of the squares of the color components, which give the
+ * 	variance over a rectangle in the same way.
+ *
+ * 	An IntegralImage is a snapshot: it does not change when the picture it
+ * 	was built from does. Picture.getIntegralImage() keeps one for as long
+ * 	as the Picture is not modified.
+ */
+public class IntegralImage
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** Channel number of alpha. */
+	public static final int ALPHA = 0;
+
+	/** Channel number of red. */
+	public static final int RED = 1;
+
+	/** Channel number of green. */
+	public static final int GREEN = 2;
+
+	/** Channel number of blue. */
+	public static final int BLUE = 3;
+
+	/** Number of channels. */
+	private static final int CHANNELS = 4;
+
+	/** Width of the picture the table was built from. */
+	private int width;
+
+	/** Height of the picture the table was built from. */
+	private int height;
+
+	/**
+	 * Sums of each channel. Entry y * (width + 1) + x of a channel holds
+	 * 	the sum over the pixels left of x and above y, so the first row and
+	 * 	column of every table are zero.
+	 */
+	private long[][] sums = new long[CHANNELS][];
+
+	/** Sums of the squares of each channel, laid out as sums, or null. */
+	private long[][] squares;
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * A constructor that builds the table of the SimplePicture provided.
+	 *
+	 * @param picture The SimplePicture to sum.
+	 * @param withSquares True, if the sums of squares needed by variance
+	 * 	should be built as well.
+	 */
+	public IntegralImage(SimplePicture picture, boolean withSquares) {
+		width = picture.getWidth();
+		height = picture.getHeight();
+		int size = (width + 1) * (height + 1);
+
+		for (int channel = 0; channel < CHANNELS; channel++)
+			sums[channel] = new long[size];
+		if (withSquares) {
+			squares = new long[CHANNELS][];
+			for (int channel = 0; channel < CHANNELS; channel++)
+				squares[channel] = new long[size];
+		}
+
+		// Tiled pixels, or pixels kept off the heap, are read a row at a time.
+		int[] raster = picture.getFlatRaster();
+		int[] row = raster == null ? new int[width] : null;
+		long[] rowSums = new long[CHANNELS];
+		long[] rowSquares = new long[CHANNELS];
+		for (int y = 0; y < height; y++) {
+			Arrays.fill(rowSums, 0);
+			Arrays.fill(rowSquares, 0);
+			int[] pixels = raster != null ? raster : picture.getRow(y, row);
+			int index = raster != null ? picture.rasterIndex(0, y) : 0;
+			int above = y * (width + 1) + 1;
+			int entry = above + width + 1;
+
+			// Each entry is the entry above it plus the row so far.
+			for (int x = 0; x < width; x++, index++, above++, entry++) {
+				int value = pixels[index];
+				for (int channel = 0; channel < CHANNELS; channel++) {
+					int component = (value >>> (24 - 8 * channel)) & 0xff;
+					rowSums[channel] += component;
+					sums[channel][entry] = sums[channel][above] +
+						rowSums[channel];
+					if (squares != null) {
+						rowSquares[channel] += component * component;
+						squares[channel][entry] = squares[channel][above] +
+							rowSquares[channel];
+					}
+				}
+			}
+		}
+	}
+
+	/////////////////////////////// Methods ///////////////////////////////////
+
+	/**
+	 * @return The width of the picture the table was built from.
+	 */
+	public int getWidth() { return width; }
+
+	/**
+	 * @return The height of the picture the table was built from.
+	 */
+	public int getHeight() { return height; }
+
+	/**
+	 * @return True, if the sums of squares were built, so that variance
+	 * 	can be used.
+	 */
+	public boolean hasSquares() { return squares != null; }
+
+	/*
+	 * Every rectangle below is given by its top left corner, its width and
+	 * 	its height, and is first cut down to the part that lies inside the
+	 * 	picture. Pixels outside of the picture are simply ignored, just as
+	 * 	blur ignores them at the edges.
+	 */
+
+	/**
+	 * @param x The leftmost x-coordinate of the rectangle.
+	 * @param y The topmost y-coordinate of the rectangle.
+	 * @param rectWidth The width of the rectangle.
+	 * @param rectHeight The height of the rectangle.
+	 *
+	 * @return The number of pixels of the rectangle inside the picture.
+	 */
+	public int count(int x, int y, int rectWidth, int rectHeight) {
+		int columns = clip(x + rectWidth, width) - clip(x, width);
+		int rows = clip(y + rectHeight, height) - clip(y, height);
+		return columns > 0 && rows > 0 ? columns * rows : 0;
+	}
+
+	/**
+	 * @param channel ALPHA, RED, GREEN, or BLUE.
+	 * @param x The leftmost x-coordinate of the rectangle.
+	 * @param y The topmost y-coordinate of the rectangle.
+	 * @param rectWidth The width of the rectangle.
+	 * @param rectHeight The height of the rectangle.
+	 *
+	 * @return The sum of the channel over the rectangle.
+	 */
+	public long sum(int channel, int x, int y, int rectWidth,
+			int rectHeight) {
+		return lookup(sums[channel], x, y, rectWidth, rectHeight);
+	}
+
+	/**
+	 * @param channel ALPHA, RED, GREEN, or BLUE.
+	 * @param x The leftmost x-coordinate of the rectangle.
+	 * @param y The topmost y-coordinate of the rectangle.
+	 * @param rectWidth The width of the rectangle.
+	 * @param rectHeight The height of the rectangle.
+	 *
+	 * @return The sum of the squares of the channel over the rectangle.
+	 *
+	 * @throws IllegalStateException If the sums of squares were not built.
+	 */
+	public long sumOfSquares(int channel, int x, int y, int rectWidth,
+			int rectHeight) {
+		if (squares == null)
+			throw new IllegalStateException(
+					"This IntegralImage was built without sums of squares.");
+		return lookup(squares[channel], x, y, rectWidth, rectHeight);
+	}
+
+	/**
+	 * @param channel ALPHA, RED, GREEN, or BLUE.
+	 * @param x The leftmost x-coordinate of the rectangle.
+	 * @param y The topmost y-coordinate of the rectangle.
+	 * @param rectWidth The width of the rectangle.
+	 * @param rectHeight The height of the rectangle.
+	 *
+	 * @return The mean of the channel over the rectangle, or NaN if no
+	 * 	pixel of the rectangle is inside the picture.
+	 */
+	public double mean(int channel, int x, int y, int rectWidth,
+			int rectHeight) {
+		return (double) sum(channel, x, y, rectWidth, rectHeight) /
+			count(x, y, rectWidth, rectHeight);
+	}
+
+	/**
+	 * @param channel ALPHA, RED, GREEN, or BLUE.
+	 * @param x The leftmost x-coordinate of the rectangle.
+	 * @param y The topmost y-coordinate of the rectangle.
+	 * @param rectWidth The width of the rectangle.
+	 * @param rectHeight The height of the rectangle.
+	 *
+	 * @return The variance of the channel over the rectangle, or NaN if
+	 * 	no pixel of the rectangle is inside the picture.
+	 *
+	 * @throws IllegalStateException If the sums of squares were not built.
+	 */
+	public double variance(int channel, int x, int y, int rectWidth,
+			int rectHeight) {
+		double count = count(x, y, rectWidth, rectHeight);
+		double mean = sum(channel, x, y, rectWidth, rectHeight) / count;
+		double meanOfSquares = sumOfSquares(channel, x, y, rectWidth,
+				rectHeight) / count;
+		// Rounding can leave a tiny negative value for a flat rectangle.
+		return Math.max(0, meanOfSquares - mean * mean);
+	}
+
+	/**
+	 * @param x The leftmost x-coordinate of the rectangle.
+	 * @param y The topmost y-coordinate of the rectangle.
+	 * @param rectWidth The width of the rectangle.
+	 * @param rectHeight The height of the rectangle.
+	 *
+	 * @return The average pixel of the rectangle as a packed int, with
+	 * 	each channel averaged separately and rounded down.
+	 *
+	 * @throws IllegalArgumentException If no pixel of the rectangle is
+	 * 	inside the picture.
+	 */
+	public int averagePixel(int x, int y, int rectWidth, int rectHeight) {
+		int count = count(x, y, rectWidth, rectHeight);
+		if (count == 0)
+			throw new IllegalArgumentException(
+					"The rectangle holds no pixels of the picture.");
+
+		int value = 0;
+		for (int channel = 0; channel < CHANNELS; channel++)
+			value = (value << 8) | (int) (lookup(sums[channel], x, y,
+					rectWidth, rectHeight) / count);
+		return value;
+	}
+
+	/**
+	 * @param table The table of one channel.
+	 * @param x The leftmost x-coordinate of the rectangle.
+	 * @param y The topmost y-coordinate of the rectangle.
+	 * @param rectWidth The width of the rectangle.
+	 * @param rectHeight The height of the rectangle.
+	 *
+	 * @return The sum the table holds for the rectangle.
+	 */
+	private long lookup(long[] table, int x, int y, int rectWidth,
+			int rectHeight) {
+		int left = clip(x, width);
+		int right = clip(x + rectWidth, width);
+		int top = clip(y, height);
+		int bottom = clip(y + rectHeight, height);
+		if (right <= left || bottom <= top)
+			return 0;
+
+		int stride = width + 1;
+		return table[bottom * stride + right] - table[bottom * stride + left]
+			- table[top * stride + right] + table[top * stride + left];
+	}
+
+	/**
+	 * @param edge An x- or y-coordinate of the edge of a rectangle.
+	 * @param size The width or height of the picture.
+	 *
+	 * @return The coordinate moved to be within 0 and size.
+	 */
+	private static int clip(int edge, int size) {
+		return Math.max(0, Math.min(size, edge));
+	}
+
+} // End of IntegralImage class
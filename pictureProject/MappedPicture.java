@@ -0,0 +1,536 @@
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.UnaryOperator;
+
+/**
+ * Class that represents a picture kept in a file rather than on the heap,
+ * 	for pictures too large to load into a BufferedImage. The file is mapped
+ * 	into memory with FileChannel.map, so only the parts of it in use are
+ * 	read in, and the operating system writes changed parts back and drops
+ * 	them again as memory runs short.
+ *
+ * 	Pixels are packed ints, with alpha, red, green, and blue each taking 8
+ * 	bits from left to right, as in the raster of a SimplePicture, and are
+ * 	stored little-endian, the byte order of nearly every machine, whatever
+ * 	the machine that wrote them. They are kept in 64 by 64 tiles, one after
+ * 	the other, so that a square region of the picture is spread over few
+ * 	pages of the file. A row of tiles is never split between mappings; a
+ * 	mapping holds as many rows of tiles as fit in MAX_MAPPING_BYTES.
+ *
+ * 	The effects of Picture run over a MappedPicture with applyInStrips,
+ * 	which reads a strip of rows at a time into a Picture, runs the effect
+ * 	on it, and writes the result back, so the heap only ever holds one
+ * 	strip.
+ */
+public class MappedPicture
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** Width and height of a tile. */
+	public static final int TILE_SIZE = 64;
+
+	/** log2 of TILE_SIZE. */
+	private static final int TILE_SHIFT = 6;
+
+	/** Mask giving the position of a pixel within its tile. */
+	private static final int TILE_MASK = TILE_SIZE - 1;
+
+	/** Number of pixels in a tile. */
+	private static final int TILE_AREA = TILE_SIZE * TILE_SIZE;
+
+	/** Largest number of bytes mapped at once. */
+	public static final int MAX_MAPPING_BYTES = 1 << 28;
+
+	/** Number of pixels a strip of applyInStrips holds, if not told. */
+	public static final int STRIP_PIXELS = 1 << 22;
+
+	/** First int of every file, "PICM" in ASCII. */
+	private static final int MAGIC = 0x5049434d;
+
+	/** Size of the header before the tiles: magic, width, height, and
+	 * 	tile size. */
+	private static final int HEADER_BYTES = 16;
+
+	/** The file being mapped. */
+	private final File file;
+
+	/** The open file; null once closed. */
+	private RandomAccessFile access;
+
+	/** Width of the picture. */
+	private final int width;
+
+	/** Height of the picture. */
+	private final int height;
+
+	/** Number of tiles in a row of tiles. */
+	private final int tilesAcross;
+
+	/** Number of rows of tiles in a mapping. */
+	private final int tileRowsPerMapping;
+
+	/** The mappings, made the first time they are needed; null where not
+	 * 	made yet. */
+	private final AtomicReferenceArray<IntBuffer> mappings;
+
+	/** The same mappings as bytes, kept to write them back to the file. */
+	private final MappedByteBuffer[] mappedBytes;
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * A constructor that takes an open file and the size of the picture in
+	 * 	it. Use create or open.
+	 *
+	 * @param file The file.
+	 * @param access The file, opened for reading and writing.
+	 * @param width The width of the picture.
+	 * @param height The height of the picture.
+	 */
+	private MappedPicture(File file, RandomAccessFile access, int width,
+			int height) {
+		this.file = file;
+		this.access = access;
+		this.width = width;
+		this.height = height;
+		tilesAcross = (width + TILE_MASK) >> TILE_SHIFT;
+		tileRowsPerMapping = Math.max(1,
+				MAX_MAPPING_BYTES / (tilesAcross * TILE_AREA * 4));
+		int tilesDown = (height + TILE_MASK) >> TILE_SHIFT;
+		mappings = new AtomicReferenceArray<IntBuffer>(
+				(tilesDown + tileRowsPerMapping - 1) / tileRowsPerMapping);
+		mappedBytes = new MappedByteBuffer[mappings.length()];
+	}
+
+	/////////////////////////////// Methods ///////////////////////////////////
+
+	/**
+	 * Creates a file holding a new picture, with every pixel 0. On most
+	 * 	file systems no disk space is used until pixels are written.
+	 *
+	 * @param file The file to create; it is overwritten if it exists.
+	 * @param width The width of the picture.
+	 * @param height The height of the picture.
+	 *
+	 * @return A MappedPicture of the new file.
+	 *
+	 * @throws IOException If the file could not be created.
+	 */
+	public static MappedPicture create(File file, int width, int height)
+			throws IOException {
+		// A row of tiles must fit in a single mapping.
+		if (width <= 0 || height <= 0 ||
+				width > (Integer.MAX_VALUE / (TILE_AREA * 4)) * TILE_SIZE)
+			throw new IllegalArgumentException("A mapped picture cannot be " +
+					width + " by " + height + " pixels.");
+
+		RandomAccessFile access = new RandomAccessFile(file, "rw");
+		try {
+			access.setLength(0);
+			access.setLength(HEADER_BYTES + (long) ((width + TILE_MASK) >>
+					TILE_SHIFT) * ((height + TILE_MASK) >> TILE_SHIFT) *
+					TILE_AREA * 4);
+			access.writeInt(MAGIC);
+			access.writeInt(width);
+			access.writeInt(height);
+			access.writeInt(TILE_SIZE);
+		} catch (IOException ex) {
+			access.close();
+			throw ex;
+		}
+		return new MappedPicture(file, access, width, height);
+	}
+
+	/**
+	 * Opens a file written by a MappedPicture, for reading and writing.
+	 *
+	 * @param file The file to open.
+	 *
+	 * @return A MappedPicture of the file.
+	 *
+	 * @throws IOException If the file could not be opened, or does not
+	 * 	hold a mapped picture.
+	 */
+	public static MappedPicture open(File file) throws IOException {
+		RandomAccessFile access = new RandomAccessFile(file, "rw");
+		try {
+			if (access.length() < HEADER_BYTES || access.readInt() != MAGIC)
+				throw new IOException(file + " does not hold a mapped picture.");
+			int width = access.readInt();
+			int height = access.readInt();
+			if (access.readInt() != TILE_SIZE || width <= 0 || height <= 0)
+				throw new IOException(file + " does not hold a mapped " +
+						"picture with " + TILE_SIZE + " by " + TILE_SIZE +
+						" tiles.");
+			return new MappedPicture(file, access, width, height);
+		} catch (IOException ex) {
+			access.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Copies an image file into a new mapped picture, one strip of rows at
+	 * 	a time, so that the image never has to fit on the heap. How little
+	 * 	of the image file is read for each strip is up to its ImageReader.
+	 *
+	 * @param imageFileName The name of the image file to read.
+	 * @param file The file to create.
+	 *
+	 * @return A MappedPicture of the new file.
+	 *
+	 * @throws IOException If the image could not be read or the file
+	 * 	could not be written.
+	 */
+	public static MappedPicture importImage(String imageFileName, File file)
+			throws IOException {
+		ImageInputStream input = ImageIO.createImageInputStream(
+				new File(imageFileName));
+		if (input == null)
+			throw new IOException(imageFileName + " could not be opened.");
+
+		try {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+			if (!readers.hasNext())
+				throw new IOException(imageFileName +
+						" is not in an image format that can be read.");
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(input);
+				int width = reader.getWidth(0);
+				int height = reader.getHeight(0);
+				MappedPicture picture = create(file, width, height);
+				int[] pixels = new int[width * TILE_SIZE];
+				ImageReadParam param = reader.getDefaultReadParam();
+
+				for (int y = 0; y < height; y += TILE_SIZE) {
+					int rows = Math.min(TILE_SIZE, height - y);
+					param.setSourceRegion(new Rectangle(0, y, width, rows));
+					BufferedImage strip = reader.read(0, param);
+					strip.getRGB(0, 0, width, rows, pixels, 0, width);
+					for (int row = 0; row < rows; row++)
+						picture.copyRow(0, y + row, pixels, row * width,
+								width, true);
+				}
+				return picture;
+			} finally {
+				reader.dispose();
+			}
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * @return The file being mapped.
+	 */
+	public File getFile() { return file; }
+
+	/**
+	 * @return The width of the picture.
+	 */
+	public int getWidth() { return width; }
+
+	/**
+	 * @return The height of the picture.
+	 */
+	public int getHeight() { return height; }
+
+	/**
+	 * @param mapping The number of a mapping.
+	 *
+	 * @return The mapping, mapping it first if needed.
+	 */
+	private IntBuffer mapping(int mapping) {
+		IntBuffer buffer = mappings.get(mapping);
+		if (buffer != null)
+			return buffer;
+
+		synchronized (this) {
+			// Another thread may have made the mapping in the meantime.
+			buffer = mappings.get(mapping);
+			if (buffer != null)
+				return buffer;
+			if (access == null)
+				throw new IllegalStateException(file + " has been closed.");
+
+			long tileRowBytes = (long) tilesAcross * TILE_AREA * 4;
+			int firstTileRow = mapping * tileRowsPerMapping;
+			int tileRows = Math.min(tileRowsPerMapping,
+					((height + TILE_MASK) >> TILE_SHIFT) - firstTileRow);
+			try {
+				MappedByteBuffer bytes = access.getChannel().map(
+						FileChannel.MapMode.READ_WRITE,
+						HEADER_BYTES + firstTileRow * tileRowBytes,
+						tileRows * tileRowBytes);
+				mappedBytes[mapping] = bytes;
+				buffer = bytes.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+			} catch (IOException ex) {
+				throw new IllegalStateException(file +
+						" could not be mapped.", ex);
+			}
+			mappings.set(mapping, buffer);
+			return buffer;
+		}
+	}
+
+	/**
+	 * @param x The x-coordinate of a pixel.
+	 * @param y The y-coordinate of the pixel.
+	 *
+	 * @return The index of the pixel in its mapping.
+	 */
+	private int indexInMapping(int x, int y) {
+		int tileRow = (y >> TILE_SHIFT) % tileRowsPerMapping;
+		return ((tileRow * tilesAcross + (x >> TILE_SHIFT)) << (2 * TILE_SHIFT))
+				| ((y & TILE_MASK) << TILE_SHIFT) | (x & TILE_MASK);
+	}
+
+	/**
+	 * Throws the same exception as SimplePicture.getBasicPixel if the
+	 * 	coordinates provided are outside of the picture.
+	 *
+	 * @param x The x-coordinate of the pixel.
+	 * @param y The y-coordinate of the pixel.
+	 */
+	private void checkBounds(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height)
+			throw new ArrayIndexOutOfBoundsException(
+					"Coordinate out of bounds!");
+	}
+
+	/**
+	 * @param x The x-coordinate of the pixel.
+	 * @param y The y-coordinate of the pixel.
+	 *
+	 * @return The pixel value as an integer, with alpha, red, green, and
+	 * 	blue each occupying 8 bits.
+	 */
+	public int getBasicPixel(int x, int y) {
+		checkBounds(x, y);
+		return mapping((y >> TILE_SHIFT) / tileRowsPerMapping)
+				.get(indexInMapping(x, y));
+	}
+
+	/**
+	 * @param x The x-coordinate of the pixel.
+	 * @param y The y-coordinate of the pixel.
+	 * @param rgb The new value of the pixel, with alpha, red, green, and
+	 * 	blue each occupying 8 bits.
+	 */
+	public void setBasicPixel(int x, int y, int rgb) {
+		checkBounds(x, y);
+		mapping((y >> TILE_SHIFT) / tileRowsPerMapping)
+				.put(indexInMapping(x, y), rgb);
+	}
+
+	/**
+	 * Copies part of one row between the picture and an array, one tile
+	 * 	at a time.
+	 *
+	 * @param x The x-coordinate of the first pixel.
+	 * @param y The y-coordinate of the row.
+	 * @param row The array to copy into or out of.
+	 * @param offset The index in row of the first pixel.
+	 * @param length The number of pixels to copy.
+	 * @param write True to copy from row into the picture; false to copy
+	 * 	from the picture into row.
+	 */
+	private void copyRow(int x, int y, int[] row, int offset, int length,
+			boolean write) {
+		if (length <= 0)
+			return;
+		checkBounds(x, y);
+		checkBounds(x + length - 1, y);
+
+		// A duplicate has its own position, so threads never share one.
+		IntBuffer buffer = mapping((y >> TILE_SHIFT) / tileRowsPerMapping)
+				.duplicate();
+		for (int end = x + length; x < end; ) {
+			int run = Math.min(end - x, TILE_SIZE - (x & TILE_MASK));
+			buffer.position(indexInMapping(x, y));
+			if (write)
+				buffer.put(row, offset, run);
+			else
+				buffer.get(row, offset, run);
+			x += run;
+			offset += run;
+		}
+	}
+
+	/**
+	 * Copies one row of packed ARGB pixels out of the picture.
+	 *
+	 * @param y The y-coordinate of the row.
+	 * @param row The array to copy into; it must hold at least
+	 * 	getWidth() values.
+	 *
+	 * @return The array provided.
+	 */
+	public int[] getRow(int y, int[] row) {
+		copyRow(0, y, row, 0, width, false);
+		return row;
+	}
+
+	/**
+	 * Overwrites one row of the picture with packed ARGB pixels.
+	 *
+	 * @param y The y-coordinate of the row.
+	 * @param row The pixels to copy in; the first getWidth() values
+	 * 	are used.
+	 */
+	public void setRow(int y, int[] row) {
+		copyRow(0, y, row, 0, width, true);
+	}
+
+	/**
+	 * Copies a rectangle of the picture into a new Picture on the heap.
+	 *
+	 * @param x The x-coordinate of the left of the rectangle.
+	 * @param y The y-coordinate of the top of the rectangle.
+	 * @param regionWidth The width of the rectangle.
+	 * @param regionHeight The height of the rectangle.
+	 *
+	 * @return A new Picture holding the rectangle.
+	 */
+	public Picture readRegion(int x, int y, int regionWidth,
+			int regionHeight) {
+		Picture region = new Picture(regionWidth, regionHeight);
+		int[] row = new int[regionWidth];
+		for (int regionY = 0; regionY < regionHeight; regionY++) {
+			copyRow(x, y + regionY, row, 0, regionWidth, false);
+			region.setRow(regionY, row);
+		}
+		return region;
+	}
+
+	/**
+	 * Copies all of a SimplePicture into the picture.
+	 *
+	 * @param region The SimplePicture to copy.
+	 * @param x The x-coordinate to copy its left edge to.
+	 * @param y The y-coordinate to copy its top edge to.
+	 */
+	public void writeRegion(SimplePicture region, int x, int y) {
+		int[] row = new int[region.getWidth()];
+		for (int regionY = 0; regionY < region.getHeight(); regionY++)
+			copyRow(x, y + regionY, region.getRow(regionY, row), 0,
+					row.length, true);
+	}
+
+	/**
+	 * Runs an effect over the picture in strips of rows chosen so that a
+	 * 	strip holds about STRIP_PIXELS pixels.
+	 *
+	 * @see #applyInStrips(MappedPicture, int, int, UnaryOperator)
+	 */
+	public void applyInStrips(MappedPicture target, int halo,
+			UnaryOperator<Picture> effect) {
+		int stripHeight = Math.max(TILE_SIZE,
+				STRIP_PIXELS / width / TILE_SIZE * TILE_SIZE);
+		applyInStrips(target, halo, stripHeight, effect);
+	}
+
+	/**
+	 * Runs an effect over the picture one strip of rows at a time, writing
+	 * 	the result to target. Each strip is read along with halo rows above
+	 * 	and below it, so that an effect that looks up to halo pixels away,
+	 * 	like blur(halo), gives the same result as it would on the whole
+	 * 	picture. The effect must keep the size of the Picture it is given.
+	 * 	Effects that look at the whole picture, like paintBucket, cannot be
+	 * 	run this way.
+	 *
+	 * @param target The MappedPicture to write to, of the same size. It
+	 * 	may only be this MappedPicture when halo is 0, since the halo of a
+	 * 	strip must not have been written yet.
+	 * @param halo The number of extra rows to read on either side.
+	 * @param stripHeight The number of rows written per strip.
+	 * @param effect The effect to run on each strip.
+	 *
+	 * @throws IllegalArgumentException If target is of a different size,
+	 * 	or is this MappedPicture and halo is not 0, or the effect changes
+	 * 	the size of a strip.
+	 */
+	public void applyInStrips(MappedPicture target, int halo,
+			int stripHeight, UnaryOperator<Picture> effect) {
+		if (target.width != width || target.height != height)
+			throw new IllegalArgumentException("The target picture must " +
+					"be " + width + " by " + height + " pixels.");
+		if (target == this && halo != 0)
+			throw new IllegalArgumentException("An effect with a halo " +
+					"cannot write over its own source.");
+		if (halo < 0 || stripHeight <= 0)
+			throw new IllegalArgumentException("The halo cannot be " +
+					"negative, and strips must hold at least one row.");
+
+		int[] row = new int[width];
+		for (int y = 0; y < height; y += stripHeight) {
+			int top = Math.max(0, y - halo);
+			int bottom = (int) Math.min(height, (long) y + stripHeight + halo);
+			Picture strip = effect.apply(readRegion(0, top, width,
+					bottom - top));
+			if (strip.getWidth() != width || strip.getHeight() != bottom - top)
+				throw new IllegalArgumentException("The effect changed the " +
+						"size of the picture.");
+
+			// Only the rows of the strip itself are written; the halo is
+			// written with its own strip.
+			int end = Math.min(height, y + stripHeight);
+			for (int stripY = y; stripY < end; stripY++)
+				target.copyRow(0, stripY, strip.getRow(stripY - top, row), 0,
+						width, true);
+		}
+	}
+
+	/**
+	 * Writes every changed pixel back to the file.
+	 */
+	public synchronized void flush() {
+		for (MappedByteBuffer bytes : mappedBytes)
+			if (bytes != null)
+				bytes.force();
+	}
+
+	/**
+	 * Writes every changed pixel back to the file and closes it. The
+	 * 	memory mapped stays in use until the MappedPicture is garbage
+	 * 	collected.
+	 *
+	 * @throws IOException If the file could not be closed.
+	 */
+	public synchronized void close() throws IOException {
+		if (access == null)
+			return;
+		flush();
+		for (int mapping = 0; mapping < mappings.length(); mapping++) {
+			mappings.set(mapping, null);
+			mappedBytes[mapping] = null;
+		}
+		access.close();
+		access = null;
+	}
+
+	/**
+	 * @return A String with information about the picture.
+	 */
+	public String toString() {
+		return "Mapped Picture, file " + file + " height " + height +
+			" width " + width;
+	}
+
+} // End of MappedPicture class
@@ -0,0 +1,283 @@
+import java.io.IOException;
+
+/**
+ * Class that shows a Picture turned into any of its 8 orientations: the 4
+ * 	rotations, each with or without a flip. An OrientedPicture is only a
+ * 	view. It shares the pixels of its source Picture and records how to
+ * 	reach them, so rotating or flipping it moves no pixels at all:
+ *
+ * 	picture.oriented().rotate(1).flip(Picture.VERTICAL).materialize()
+ *
+ * 	reads every pixel once, when materialize() is called, and gives the
+ * 	same Picture as picture.rotate(1).flip(Picture.VERTICAL).
+ *
+ * 	The orientation is kept as the two steps used by RasterTransform: pixel
+ * 	(x, y) of the view is pixel origin + x * xStep + y * yStep of the
+ * 	source. Each step moves one pixel along one of the axes of the source,
+ * 	and the origin is whichever corner of the source the view starts at.
+ * 	Since the view reads the source directly, changes to the source show
+ * 	through it.
+ */
+public class OrientedPicture
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** The Picture being viewed. */
+	private final Picture source;
+
+	/** Change in source x per step in view x. */
+	private final int xStepX;
+
+	/** Change in source y per step in view x. */
+	private final int xStepY;
+
+	/** Change in source x per step in view y. */
+	private final int yStepX;
+
+	/** Change in source y per step in view y. */
+	private final int yStepY;
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * A constructor that takes the Picture to view, as it is.
+	 *
+	 * @param source The Picture to view.
+	 */
+	public OrientedPicture(Picture source) {
+		this(source, 1, 0, 0, 1);
+	}
+
+	/**
+	 * A constructor that takes the Picture to view and the steps of the
+	 * 	orientation.
+	 *
+	 * @param source The Picture to view.
+	 * @param xStepX Change in source x per step in view x.
+	 * @param xStepY Change in source y per step in view x.
+	 * @param yStepX Change in source x per step in view y.
+	 * @param yStepY Change in source y per step in view y.
+	 */
+	private OrientedPicture(Picture source, int xStepX, int xStepY,
+			int yStepX, int yStepY) {
+		this.source = source;
+		this.xStepX = xStepX;
+		this.xStepY = xStepY;
+		this.yStepX = yStepX;
+		this.yStepY = yStepY;
+	}
+
+	/////////////////////////////// Methods ///////////////////////////////////
+
+	/**
+	 * Follows this orientation with one more. The new view reads its pixel
+	 * 	(x, y) from pixel origin + x * xStep + y * yStep of this view, with
+	 * 	steps given as for RasterTransform.copy; composing the two only
+	 * 	multiplies their steps.
+	 *
+	 * @param nextXStepX Change in x of this view per step in new x.
+	 * @param nextXStepY Change in y of this view per step in new x.
+	 * @param nextYStepX Change in x of this view per step in new y.
+	 * @param nextYStepY Change in y of this view per step in new y.
+	 *
+	 * @return The new OrientedPicture.
+	 */
+	private OrientedPicture then(int nextXStepX, int nextXStepY,
+			int nextYStepX, int nextYStepY) {
+		return new OrientedPicture(source,
+				nextXStepX * xStepX + nextXStepY * yStepX,
+				nextXStepX * xStepY + nextXStepY * yStepY,
+				nextYStepX * xStepX + nextYStepY * yStepX,
+				nextYStepX * xStepY + nextYStepY * yStepY);
+	}
+
+	/**
+	 * @param rotations The number of times to rotate clockwise by 90
+	 * 	degrees, as for Picture.rotate.
+	 *
+	 * @return An OrientedPicture of the same source, rotated.
+	 */
+	public OrientedPicture rotate(int rotations) {
+		switch (((rotations % 4) + 4) % 4) {
+		case 1:
+			return then(0, -1, 1, 0);
+		case 2:
+			return then(-1, 0, 0, -1);
+		case 3:
+			return then(0, 1, -1, 0);
+		default:
+			return this;
+		}
+	}
+
+	/**
+	 * @param axis The axis to flip about, as for Picture.flip.
+	 *
+	 * @return An OrientedPicture of the same source, flipped.
+	 */
+	public OrientedPicture flip(int axis) {
+		switch (axis) {
+		case Picture.HORIZONTAL:
+			return then(1, 0, 0, -1);
+		case Picture.VERTICAL:
+			return then(-1, 0, 0, 1);
+		case Picture.FORWARD_DIAGONAL:
+			return then(0, -1, -1, 0);
+		case Picture.BACKWARD_DIAGONAL:
+			return then(0, 1, 1, 0);
+		default:
+			return this;
+		}
+	}
+
+	/**
+	 * @return The Picture being viewed.
+	 */
+	public Picture getSource() { return source; }
+
+	/**
+	 * @return True, if the view shows the source as it is.
+	 */
+	public boolean isIdentity() {
+		return xStepX == 1 && yStepY == 1;
+	}
+
+	/**
+	 * @return True, if the rows of the view are columns of the source.
+	 */
+	private boolean isTransposed() { return xStepX == 0; }
+
+	/**
+	 * @return The width of the view.
+	 */
+	public int getWidth() {
+		return isTransposed() ? source.getHeight() : source.getWidth();
+	}
+
+	/**
+	 * @return The height of the view.
+	 */
+	public int getHeight() {
+		return isTransposed() ? source.getWidth() : source.getHeight();
+	}
+
+	/**
+	 * @return The source x-coordinate of view pixel (0, 0).
+	 */
+	private int originX() {
+		return xStepX < 0 || yStepX < 0 ? source.getWidth() - 1 : 0;
+	}
+
+	/**
+	 * @return The source y-coordinate of view pixel (0, 0).
+	 */
+	private int originY() {
+		return xStepY < 0 || yStepY < 0 ? source.getHeight() - 1 : 0;
+	}
+
+	/**
+	 * @param x The x-coordinate of a pixel of the view.
+	 * @param y The y-coordinate of a pixel of the view.
+	 *
+	 * @return The x-coordinate of the same pixel in the source.
+	 */
+	public int sourceX(int x, int y) {
+		return originX() + x * xStepX + y * yStepX;
+	}
+
+	/**
+	 * @param x The x-coordinate of a pixel of the view.
+	 * @param y The y-coordinate of a pixel of the view.
+	 *
+	 * @return The y-coordinate of the same pixel in the source.
+	 */
+	public int sourceY(int x, int y) {
+		return originY() + x * xStepY + y * yStepY;
+	}
+
+	/**
+	 * Throws the same exception as SimplePicture.getBasicPixel if the
+	 * 	coordinates provided are outside of the view.
+	 *
+	 * @param x The x-coordinate of the pixel.
+	 * @param y The y-coordinate of the pixel.
+	 */
+	private void checkBounds(int x, int y) {
+		if (x < 0 || y < 0 || x >= getWidth() || y >= getHeight())
+			throw new ArrayIndexOutOfBoundsException(
+					"Coordinate out of bounds!");
+	}
+
+	/**
+	 * @param x The x-coordinate of the pixel in the view.
+	 * @param y The y-coordinate of the pixel in the view.
+	 *
+	 * @return The pixel value as an integer, with alpha, red, green, and
+	 * 	blue each occupying 8 bits.
+	 */
+	public int getBasicPixel(int x, int y) {
+		checkBounds(x, y);
+		return source.getBasicPixel(sourceX(x, y), sourceY(x, y));
+	}
+
+	/**
+	 * @param x The x-coordinate of the pixel in the view.
+	 * @param y The y-coordinate of the pixel in the view.
+	 *
+	 * @return The Pixel of the source that shows at (x, y) in the view. Its
+	 * 	own getX and getY give its location in the source, and setting its
+	 * 	colors changes the source.
+	 */
+	public Pixel getPixel(int x, int y) {
+		checkBounds(x, y);
+		return source.getPixel(sourceX(x, y), sourceY(x, y));
+	}
+
+	/**
+	 * Moves the pixels of the source into a new Picture, once, whatever the
+	 * 	number of rotations and flips that were composed.
+	 *
+	 * @return A new Picture holding the view.
+	 */
+	public Picture materialize() {
+		if (isIdentity())
+			return new Picture(source);
+
+		Picture newPicture = new Picture(getWidth(), getHeight());
+		RasterTransform.copy(source, newPicture, originX(), originY(),
+				xStepX, xStepY, yStepX, yStepY, source.getBandExecutor());
+		return newPicture;
+	}
+
+	/**
+	 * Writes the view to the file provided.
+	 *
+	 * @param fileName The name of the file to write to.
+	 *
+	 * @throws IOException If the file could not be written.
+	 */
+	public void writeOrFail(String fileName) throws IOException {
+		materialize().writeOrFail(fileName);
+	}
+
+	/**
+	 * Writes the view to the file provided.
+	 *
+	 * @param fileName The name of the file to write to.
+	 *
+	 * @return True, if the file was written.
+	 */
+	public boolean write(String fileName) {
+		return materialize().write(fileName);
+	}
+
+	/**
+	 * @return A String with information about the view.
+	 */
+	public String toString() {
+		return "OrientedPicture of " + source + ", x step = (" + xStepX +
+			", " + xStepY + "), y step = (" + yStepX + ", " + yStepY + ")";
+	}
+
+} // End of OrientedPicture class
@@ -1,6 +1,13 @@
 import java.awt.Color;
+import java.io.IOException;
 import java.net.URL;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
 
 /**
  * A class that represents a picture.  This class inherits from SimplePicture
@@ -25,20 +32,27 @@ public class Picture extends SimplePicture
 	public static final int FORWARD_DIAGONAL = 3;
 	public static final int BACKWARD_DIAGONAL = 4;
 
-	// Different Picture objects for the bitmaps used in ASCII art conversion.
-	private static Picture BMP_AMPERSAND;
-	private static Picture BMP_APOSTROPHE;
-	private static Picture BMP_AT;
-	private static Picture BMP_BAR;
-	private static Picture BMP_COLON; 
-	private static Picture BMP_DOLLAR; 
-	private static Picture BMP_DOT; 
-	private static Picture BMP_EXCLAMATION; 
-	private static Picture BMP_GRAVE; 
-	private static Picture BMP_HASH;
-	private static Picture BMP_PERCENT; 
-	private static Picture BMP_SEMICOLON; 
-	private static Picture BMP_SPACE; 	
+	// The BandExecutor used by Pictures that have not been given their own.
+	private static volatile BandExecutor defaultBandExecutor =
+		BandExecutor.SERIAL;
+
+	// The EffectCache that showEdges, blur, and convertToAscii go through, or null.
+	private static volatile EffectCache effectCache;
+
+
+	/////////////////////////////// Variables /////////////////////////////////
+
+	// The BandExecutor for the effects of this Picture, or null for the default.
+	private BandExecutor bandExecutor;
+
+	// The IntegralImage of this Picture, or null until it is asked for again.
+	private volatile IntegralImage integralImage;
+
+	// The PixelHash of this Picture, or null until it is asked for again.
+	private volatile Long contentHash;
+
+	// The SHA-256 digest of this Picture, or null until it is asked for again.
+	private volatile String digest;
 
 	//////////////////////////// Constructors /////////////////////////////////
 
@@ -78,6 +92,8 @@ public class Picture extends SimplePicture
 	public Picture(Picture pictureToCopy) {
 		// Let the parent class do the copying.
 		super(pictureToCopy);
+		contentHash = pictureToCopy.contentHash;
+		digest = pictureToCopy.digest;
 	}
 
 	/**
@@ -102,6 +118,264 @@ public class Picture extends SimplePicture
 		return output;
 	}
 
+	/**
+	 * @return The BandExecutor used by Pictures that have not been given
+	 * 	their own.
+	 */
+	public static BandExecutor getDefaultBandExecutor() {
+		return defaultBandExecutor;
+	}
+
+	/**
+	 * Sets the BandExecutor used by Pictures that have not been given their
+	 * 	own. This is BandExecutor.SERIAL unless changed.
+	 * 
+	 * @param executor The BandExecutor to use.
+	 */
+	public static void setDefaultBandExecutor(BandExecutor executor) {
+		defaultBandExecutor = executor;
+	}
+
+	/**
+	 * @return The EffectCache that showEdges, blur, and convertToAscii go
+	 * 	through, or null if they always run.
+	 */
+	public static EffectCache getEffectCache() {
+		return effectCache;
+	}
+
+	/**
+	 * Sets the EffectCache that showEdges, blur, and convertToAscii go
+	 * 	through, so that they only run on pixels they have not seen with
+	 * 	the same parameters. There is none unless one is set; a
+	 * 	DiskEffectCache given to the EffectCache keeps the results across
+	 * 	runs as well.
+	 * 
+	 * @param cache The EffectCache to use, or null for none.
+	 */
+	public static void setEffectCache(EffectCache cache) {
+		effectCache = cache;
+	}
+
+	/**
+	 * @return The BandExecutor that the effects of this Picture run on.
+	 */
+	public BandExecutor getBandExecutor() {
+		return bandExecutor != null ? bandExecutor : defaultBandExecutor;
+	}
+
+	/**
+	 * Sets the BandExecutor that the effects of this Picture run on. The
+	 * 	Pictures that the effects return do not inherit it.
+	 * 
+	 * @param executor The BandExecutor to use, or null to use the default.
+	 * 
+	 * @return This Picture, so that an effect can be called right away, as in
+	 * 	picture.setBandExecutor(BandExecutor.parallel()).blur(3).
+	 */
+	public Picture setBandExecutor(BandExecutor executor) {
+		bandExecutor = executor;
+		return this;
+	}
+
+	/**
+	 * @return The IntegralImage of this Picture, without sums of squares.
+	 */
+	public IntegralImage getIntegralImage() {
+		return getIntegralImage(false);
+	}
+
+	/**
+	 * The IntegralImage is built the first time it is asked for and kept
+	 * 	until the pixels of this Picture change, so that any number of
+	 * 	region queries in between share a single one. No effect asks for
+	 * 	it, since it takes 32 bytes for every pixel. It is
+	 * 	not kept while a BufferedImage or Graphics that writes the pixels
+	 * 	has been handed out.
+	 * 
+	 * @param withSquares True, if the sums of squares needed by
+	 * 	IntegralImage.variance are needed as well.
+	 * 
+	 * @return The IntegralImage of this Picture.
+	 */
+	public synchronized IntegralImage getIntegralImage(boolean withSquares) {
+		IntegralImage sums = integralImage;
+		if (sums == null || (withSquares && !sums.hasSquares()) ||
+				isImageHandedOut()) {
+			sums = new IntegralImage(this, withSquares);
+			integralImage = isImageHandedOut() ? null : sums;
+		}
+		return sums;
+	}
+
+	/**
+	 * Forgets the IntegralImage, the content hash, and the digest of this
+	 * 	Picture, since they no longer match the pixels.
+	 */
+	public void pixelsChanged() {
+		// Most writes then only read the fields, which matters when many threads write.
+		if (integralImage != null)
+			integralImage = null;
+		if (contentHash != null)
+			contentHash = null;
+		if (digest != null)
+			digest = null;
+	}
+
+	///////////////////////////// Pixel Kernels ///////////////////////////////
+
+	/* The methods below visit every pixel of the Picture one row at a time,
+	 * 	in the order the pixels are laid out in memory. Effects that treat
+	 * 	each pixel on its own should be written on top of them. */
+
+	/**
+	 * Applies a function to every pixel of this Picture.
+	 * 
+	 * @param operator The function to apply. It receives each pixel as a
+	 * 	packed int, with alpha, red, green, and blue each taking 8 bits
+	 * 	from left to right, and returns the new pixel in the same form.
+	 * 	With a parallel BandExecutor, it is called from several threads.
+	 * 
+	 * @return A new Picture holding the result of the function for
+	 * 	every pixel of this Picture.
+	 */
+	public Picture mapPixels(IntUnaryOperator operator) {
+		Picture newPicture = new Picture(this);
+		new InPlaceEffects(newPicture, getBandExecutor()).mapPixels(operator);
+		return newPicture;
+	}
+
+	/**
+	 * Visits every pixel of this Picture without modifying it.
+	 * 
+	 * @param consumer The PixelConsumer to pass each pixel to.
+	 */
+	public void forEachPixel(PixelConsumer consumer) {
+		int pictureWidth = this.getWidth();
+		int pictureHeight = this.getHeight();
+
+		int[] raster = this.getFlatRaster();
+		if (raster == null) {
+			// Tiled pixels, or pixels kept off the heap, are read a row at a time.
+			int[] row = new int[pictureWidth];
+			for (int y = 0; y < pictureHeight; y++) {
+				this.getRow(y, row);
+				for (int x = 0; x < pictureWidth; x++)
+					consumer.accept(x, y, row[x]);
+			}
+			return;
+		}
+
+		for (int y = 0; y < pictureHeight; y++) {
+			int index = this.rasterIndex(0, y);
+			for (int x = 0; x < pictureWidth; x++, index++)
+				consumer.accept(x, y, raster[index]);
+		}
+	}
+
+	/**
+	 * Applies point operations, described by lookup tables, to every
+	 * 	pixel of this Picture in a single pass. When several ChannelLuts
+	 * 	are given, they are applied in order to one row at a time, while
+	 * 	the row is still in the cache.
+	 * 
+	 * @param luts The ChannelLuts to apply, in order.
+	 * 
+	 * @return A new Picture holding the result.
+	 */
+	public Picture applyLut(ChannelLut... luts) {
+		Picture newPicture = new Picture(this);
+		new InPlaceEffects(newPicture, getBandExecutor()).applyLut(luts);
+		return newPicture;
+	}
+
+	/**
+	 * @return A new Picture of the size of this one, with its file name and
+	 * 	title, for an effect that writes every pixel. Copying this Picture
+	 * 	instead would copy pixels kept off the heap for nothing, and would
+	 * 	make the next write to this Picture copy its raster.
+	 */
+	private Picture blankCopy() {
+		Picture newPicture = new Picture(getWidth(), getHeight());
+		newPicture.copyInfo(this);
+		return newPicture;
+	}
+
+	/**
+	 * Gives a result from the EffectCache the file name and title of this
+	 * 	Picture, as the result of running the effect would have.
+	 * 
+	 * @param result The result.
+	 * 
+	 * @return result.
+	 */
+	private Picture withInfo(Picture result) {
+		result.copyInfo(this);
+		return result;
+	}
+
+	/**
+	 * Builds a new Picture in which every pixel is copied from this Picture
+	 * 	along an integer grid: moving one pixel right in the new Picture
+	 * 	moves (xStepX, xStepY) in this Picture, and moving one pixel down
+	 * 	moves (yStepX, yStepY). Every rotation and flip is such a copy,
+	 * 	and RasterTransform does it tile by tile where that helps.
+	 * 
+	 * @param newWidth The width of the new Picture.
+	 * @param newHeight The height of the new Picture.
+	 * @param originX The x-coordinate in this Picture of the new (0, 0).
+	 * @param originY The y-coordinate in this Picture of the new (0, 0).
+	 * @param xStepX The change in x for one step right in the new Picture.
+	 * @param xStepY The change in y for one step right in the new Picture.
+	 * @param yStepX The change in x for one step down in the new Picture.
+	 * @param yStepY The change in y for one step down in the new Picture.
+	 * 
+	 * @return The new Picture.
+	 */
+	private Picture remap(int newWidth, int newHeight, int originX,
+			int originY, int xStepX, int xStepY, int yStepX, int yStepY) {
+		Picture newPicture = new Picture(newWidth, newHeight);
+		RasterTransform.copy(this, newPicture, originX, originY, xStepX,
+				xStepY, yStepX, yStepY, getBandExecutor());
+		return newPicture;
+	}
+
+	/**
+	 * Starts a chain of point operations on this Picture. The operations
+	 * 	are only recorded; calling materialize() on the chain produces a
+	 * 	single new Picture in a single pass, instead of one new Picture
+	 * 	per operation.
+	 * 
+	 * @return A new, empty PointPipeline reading from this Picture.
+	 */
+	public PointPipeline pointOps() {
+		return new PointPipeline(this);
+	}
+
+	/**
+	 * Starts a chain of rotations and flips of this Picture. They are only
+	 * 	recorded; calling materialize() on the chain moves every pixel
+	 * 	once, however many rotations and flips there are.
+	 * 
+	 * @return An OrientedPicture showing this Picture as it is.
+	 */
+	public OrientedPicture oriented() {
+		return new OrientedPicture(this);
+	}
+
+	/**
+	 * Gives access to the effects of this Picture in versions that change
+	 * 	this Picture itself, for when the original is not needed again:
+	 * 	picture.inPlace().grayscale().blur(2) leaves picture holding the
+	 * 	same pixels as picture.grayscale().blur(2), without making any
+	 * 	new Picture.
+	 * 
+	 * @return A new InPlaceEffects changing this Picture.
+	 */
+	public InPlaceEffects inPlace() {
+		return new InPlaceEffects(this);
+	}
+
 	/////////////////////// PROJECT 1 BEGINS HERE /////////////////////////////
 
 	/* Each of the methods below is constructive: in other words, each of 
@@ -121,17 +395,7 @@ public class Picture extends SimplePicture
 	 * @return A new Picture that is the grayscale version of this Picture.
 	 */
 	public Picture grayscale() {
-		Picture newPicture = new Picture(this);
-
-		int pictureHeight = this.getHeight();
-		int pictureWidth = this.getWidth();
-
-		for(int x = 0; x < pictureWidth; x++) {
-			for(int y = 0; y < pictureHeight; y++) {
-				newPicture.setPixelToGray(x, y);
-			}
-		}
-		return newPicture;
+		return applyLut(ChannelLut.grayscale());
 	}
 
 	/**
@@ -141,11 +405,8 @@ public class Picture extends SimplePicture
 	 * @param y The y-coordinate of the pixel to be set to gray.
 	 */
 	private void setPixelToGray(int x, int y) {
-		Pixel currentPixel = this.getPixel(x, y);
-		int average = currentPixel.getAverage();
-		currentPixel.setRed(average);
-		currentPixel.setGreen(average);
-		currentPixel.setBlue(average);		
+		int value = this.getBasicPixel(x, y);
+		this.setBasicPixel(x, y, ChannelLut.grayscale().apply(value));
 	}
 
 	/**
@@ -191,19 +452,8 @@ public class Picture extends SimplePicture
 	 * @return A new Picture that is the photonegative version of this Picture. 
 	 */
 	public Picture negate() {
-		Picture newPicture = new Picture(this);
-		
-		int pictureHeight = this.getHeight();
-		int pictureWidth = this.getWidth();
-
-		//run through each pixel and set each channel(except alpha) to its photo-negative (255-value).
-		for(int x = 0; x < pictureWidth; x++) {
-			for(int y = 0; y < pictureHeight; y++) {
-				Pixel p = new Pixel(newPicture, x, y);
-				p.updatePicture(p.getAlpha(), 255-p.getRed(), 255-p.getGreen(), 255-p.getBlue());
-			}
-		}
-		return newPicture;
+		//set each channel (except alpha) to its photo-negative (255-value).
+		return applyLut(ChannelLut.negate());
 	}
 	/**
 	 * Creates an image that is lighter than the original image. The range of
@@ -214,19 +464,8 @@ public class Picture extends SimplePicture
 	 *         by the lightenAmount.
 	 */
 	public Picture lighten(int lightenAmount) {
-		Picture newPicture = new Picture(this);
-		
-		int pictureHeight = this.getHeight();
-		int pictureWidth = this.getWidth();
-
-		//run through each pixel and add the specified amount to each channel (except alpha).
-		for(int x = 0; x < pictureWidth; x++) {
-			for(int y = 0; y < pictureHeight; y++) {
-				Pixel p = new Pixel(newPicture, x, y);
-				p.updatePicture(p.getAlpha(), p.getRed() + lightenAmount, p.getGreen() + lightenAmount, p.getBlue() + lightenAmount);
-			}
-		}
-		return newPicture;
+		//add the specified amount to each channel (except alpha).
+		return applyLut(ChannelLut.shift(lightenAmount, lightenAmount, lightenAmount));
 	}
 
 	/**
@@ -238,20 +477,9 @@ public class Picture extends SimplePicture
 	 *         by the darkenenAmount.
 	 */
 	public Picture darken(int darkenAmount) {
-		Picture newPicture = new Picture(this);
-	
-	int pictureHeight = this.getHeight();
-	int pictureWidth = this.getWidth();
-
-	// run through each pixel and take the specified amount from each channel (except alpha) of the color.
-	for(int x = 0; x < pictureWidth; x++) {
-		for(int y = 0; y < pictureHeight; y++) {
-			Pixel p = new Pixel(newPicture, x, y);
-			p.updatePicture(p.getAlpha(), p.getRed() - darkenAmount, p.getGreen() - darkenAmount, p.getBlue() -darkenAmount);
-		}
+		// take the specified amount from each channel (except alpha) of the color.
+		return applyLut(ChannelLut.shift(-darkenAmount, -darkenAmount, -darkenAmount));
 	}
-	return newPicture;
-}
 
 	/**
 	 * Creates an image where the blue value has been increased by amount.The range of
@@ -262,20 +490,9 @@ public class Picture extends SimplePicture
 	 *         by amount.
 	 */
 	public Picture addBlue(int amount) {
-		Picture newPicture = new Picture(this);
-	
-	int pictureHeight = this.getHeight();
-	int pictureWidth = this.getWidth();
-
-	//run through each pixel and add the specified amount to blue.
-	for(int x = 0; x < pictureWidth; x++) {
-		for(int y = 0; y < pictureHeight; y++) {
-			Pixel p = new Pixel(newPicture, x, y);
-			p.updatePicture(p.getAlpha(), p.getRed(), p.getGreen(), p.getBlue() + amount);
-		}
+		//add the specified amount to blue.
+		return applyLut(ChannelLut.shift(0, 0, amount));
 	}
-	return newPicture;
-}
 	
 	/**
 	 * Creates an image where the red value has been increased by amount. The range of
@@ -286,19 +503,8 @@ public class Picture extends SimplePicture
 	 *         by amount.
 	 */
 	public Picture addRed(int amount) {
-		Picture newPicture = new Picture(this);
-
-		int pictureHeight = this.getHeight();
-		int pictureWidth = this.getWidth();
-
-		//run through each pixel and add the specified amount to red.
-		for(int x = 0; x < pictureWidth; x++) {
-			for(int y = 0; y < pictureHeight; y++) {
-				Pixel p = new Pixel(newPicture, x, y);
-				p.updatePicture(p.getAlpha(), p.getRed() + amount, p.getGreen(), p.getBlue());
-			}
-		}
-		return newPicture;
+		//add the specified amount to red.
+		return applyLut(ChannelLut.shift(amount, 0, 0));
 	}
 
 	
@@ -311,19 +517,8 @@ public class Picture extends SimplePicture
 	 *         by amount.
 	 */
 	public Picture addGreen(int amount) {
-		Picture newPicture = new Picture(this);
-
-		int pictureHeight = this.getHeight();
-		int pictureWidth = this.getWidth();
-
-		//run through each pixel and add the specified amount to green.
-		for(int x = 0; x < pictureWidth; x++) {
-			for(int y = 0; y < pictureHeight; y++) {
-				Pixel p = new Pixel(newPicture, x, y);
-				p.updatePicture(p.getAlpha(), p.getRed(), p.getGreen() + amount, p.getBlue());
-			}
-		}
-		return newPicture;
+		//add the specified amount to green.
+		return applyLut(ChannelLut.shift(0, amount, 0));
 	}
 	
 	/** 
@@ -345,22 +540,31 @@ public class Picture extends SimplePicture
 	 */
 	public Picture chromaKey(int xReference, int yReference, Picture background, int threshold) {
 		Picture newPicture = new Picture(this);
-		Pixel base = new Pixel(this, xReference, yReference);
+		int base = this.getBasicPixel(xReference, yReference);
+		ColorThreshold limit = new ColorThreshold(threshold); //decides (int) distance < threshold on the squared distance, with no square root.
 
 		//compares the two pictures, and sets the iterator breaks at the smaller of the two, pixels above that are irrelevant.
 		int pictureHeight = this.getHeight() > background.getHeight() ? background.getHeight() : this.getHeight();
 		int pictureWidth = this.getWidth() > background.getWidth() ? background.getWidth() : this.getWidth();
 		
-		//run through all the relevant pixels, comparing to the threshold and setting them accordingly.
-		for(int x = 0; x < pictureWidth; x++) {
-			for(int y = 0; y < pictureHeight; y++) {
-				Pixel p = new Pixel(newPicture, x, y);
-				if((int) p.colorDistance(base.getColor()) < threshold){
-					Pixel b = new Pixel(background, x, y);
-					p.setColor(b.getColor());
+		int[] raster = this.getFlatRaster();
+		
+		//run through all the relevant pixels, band by band, comparing to the threshold and setting them accordingly.
+		//only the pixels that are set go through newPicture, so it only copies the tiles that hold them.
+		getBandExecutor().run(pictureHeight, (fromY, toY) -> {
+			//tiled pixels, or pixels kept off the heap, are read a row at a time and left where they are.
+			int[] row = raster == null ? new int[this.getWidth()] : null;
+			for(int y = fromY; y < toY; y++) {
+				int[] source = raster != null ? raster : this.getRow(y, row);
+				int index = raster != null ? this.rasterIndex(0, y) : 0;
+				for(int x = 0; x < pictureWidth; x++, index++) {
+					int value = source[index];
+					if(limit.isWithin(value, base)){
+						newPicture.setBasicPixel(x, y, (value & 0xff000000) | (background.getBasicPixel(x, y) & 0x00ffffff));
+					}
 				}
 			}
-		}
+		});
 		return newPicture;
 	}
 	//////////////////////////////// Level 2 //////////////////////////////////
@@ -386,44 +590,21 @@ public class Picture extends SimplePicture
 		
 		int picHeight = this.getHeight();
 		int picWidth = this.getWidth();
-		Picture newPicture = null;
 		
-		//a switch case block for the different number of rotations. it will run through every pixel and set each one to its new spot in the new picture
+		//a switch case block for the different number of rotations. each case walks the new picture row by row and reads every pixel from its old spot.
 		//cases 1 and 3 require flipping of the dimensions.
 		switch(adjustedRots){
 		case 0: return this;
 		case 1: 
-			newPicture = new Picture(picHeight, picWidth);
-			for(int x = 0; x < picWidth; x++){
-				for(int y = 0; y < picHeight; y++){
-					Pixel old = new Pixel(this, x, y); 
-					Pixel fresh = new Pixel(newPicture, picHeight-1-y, x);
-					fresh.updatePicture(old.getAlpha(), old.getRed(), old.getGreen(), old.getBlue());
-				}
-			}
-			break;
+			// new (x, y) comes from old (y, picHeight-1-x).
+			return remap(picHeight, picWidth, 0, picHeight-1, 0, -1, 1, 0);
 		case 2:
-			newPicture = new Picture(picWidth, picHeight);
-			for(int x = 0; x < picWidth; x++){
-				for(int y = 0; y < picHeight; y++){
-					Pixel old = this.getPixel(x, y); 
-					Pixel fresh = newPicture.getPixel(picWidth-1-x, picHeight-1-y);
-					fresh.updatePicture(old.getAlpha(), old.getRed(), old.getGreen(), old.getBlue());
-				}
-			}
-			break;
-		case 3:
-			newPicture = new Picture(picHeight, picWidth);
-			for(int x = 0; x < picWidth; x++){
-				for(int y = 0; y < picHeight; y++){
-					Pixel old = this.getPixel(x, y); 
-					Pixel fresh = newPicture.getPixel(y, picWidth-1-x);
-					fresh.updatePicture(old.getAlpha(), old.getRed(), old.getGreen(), old.getBlue());
-				}
-			}
-			break;
+			// new (x, y) comes from old (picWidth-1-x, picHeight-1-y).
+			return remap(picWidth, picHeight, picWidth-1, picHeight-1, -1, 0, 0, -1);
+		default:
+			// new (x, y) comes from old (picWidth-1-y, x).
+			return remap(picHeight, picWidth, picWidth-1, 0, 0, 1, -1, 0);
 		}
-		return newPicture;
 	}
 
 	/**
@@ -446,53 +627,24 @@ public class Picture extends SimplePicture
 	 * @return A new Picture flipped about the axis provided.
 	 */
 	public Picture flip(int axis) {
-		Picture newPicture;
 		int picHeight = this.getHeight();
 		int picWidth = this.getWidth();
 		//I use a switch case block in this method because there is a set number of cases and the idea is pretty similar each time.
 		//Horizontal and Vertical don't switch the axes, where as Diagonals do so the setup is different.
-		//in each case run through all the pixels and set them to their new location in the flipped picture.
+		//in each case the new picture is walked row by row, reading every pixel from its old location.
 		switch(axis){
 		case Picture.HORIZONTAL:
-			newPicture = new Picture(picWidth, picHeight);
-			for(int x = 0; x < picWidth; x++){
-				for(int y = 0; y < picHeight; y++){
-					Pixel p = new Pixel(newPicture, x, picHeight - 1 - y);
-					Pixel old = new Pixel(this, x, y);
-					p.updatePicture(old.getAlpha(), old.getRed(), old.getGreen(), old.getBlue());
-				}
-			}
-			return newPicture;
+			// new (x, y) comes from old (x, picHeight-1-y).
+			return remap(picWidth, picHeight, 0, picHeight - 1, 1, 0, 0, -1);
 		case Picture.VERTICAL:
-			newPicture = new Picture(picWidth, picHeight);
-			for(int x = 0; x < picWidth; x++){
-				for(int y = 0; y < picHeight; y++){
-					Pixel p = new Pixel(newPicture, picWidth - 1 - x, y);
-					Pixel old = new Pixel(this, x, y);
-					p.updatePicture(old.getAlpha(), old.getRed(), old.getGreen(), old.getBlue());
-				}
-			}
-			return newPicture;
+			// new (x, y) comes from old (picWidth-1-x, y).
+			return remap(picWidth, picHeight, picWidth - 1, 0, -1, 0, 0, 1);
 		case Picture.FORWARD_DIAGONAL:
-			newPicture = new Picture(picHeight, picWidth);
-			for(int x = 0; x < picWidth; x++){
-				for(int y = 0; y < picHeight; y++){
-					Pixel p = new Pixel(newPicture, picHeight - 1 - y, picWidth - 1 - x);
-					Pixel old = new Pixel(this, x, y);
-					p.updatePicture(old.getAlpha(), old.getRed(), old.getGreen(), old.getBlue());
-				}
-			}
-			return newPicture;
+			// new (x, y) comes from old (picWidth-1-y, picHeight-1-x).
+			return remap(picHeight, picWidth, picWidth - 1, picHeight - 1, 0, -1, -1, 0);
 		case Picture.BACKWARD_DIAGONAL:
-			newPicture = new Picture(picHeight, picWidth);
-			for(int x = 0; x < picWidth; x++){
-				for(int y = 0; y < picHeight; y++){
-					Pixel p = new Pixel(newPicture, y, x);
-					Pixel old = new Pixel(this, x, y);
-					p.updatePicture(old.getAlpha(), old.getRed(), old.getGreen(), old.getBlue());
-				}
-			}
-			return newPicture;
+			// new (x, y) comes from old (y, x).
+			return remap(picHeight, picWidth, 0, 0, 0, 1, 1, 0);
 		default:
 			return this;
 		}
@@ -516,47 +668,57 @@ public class Picture extends SimplePicture
 	 *         white.
 	 */
 	public Picture showEdges(int threshold) {
-		Picture newPicture = new Picture(this); //clone the picture
+		EffectCache cache = effectCache;
+		if (cache == null)
+			return showEdgesUncached(threshold);
+		return withInfo(cache.showEdges(this, threshold));
+	}
+
+	/**
+	 * @see #showEdges
+	 */
+	Picture showEdgesUncached(int threshold) {
+		Picture newPicture = blankCopy(); //every pixel is written, so none are copied
 		int picWidth = newPicture.getWidth();
 		int picHeight = newPicture.getHeight();
-		//I use a four step process to show the edges.
-		//first the set the 0,0 pixel to white automatically, since it has no comparison points
-		newPicture.setBasicPixel(0, 0, new Color(255, 255, 255).getRGB());
-		
-		//I then run through the row y=0 comparing only to the west, as there are no northern pixels.
-		for(int x = 1; x < picWidth; x++){
-			Pixel testPoint = new Pixel(newPicture, x, 0);
-			Pixel reference2 = new Pixel(this, x-1, 0);
-			if(((int) testPoint.colorDistance(reference2.getColor())) > threshold)
-				testPoint.updatePicture(255, 0, 0, 0);
-			else
-				testPoint.updatePicture(255, 255, 255, 255);
-		}
-		
-		//then the column x=0 comparing only north, as the west pixels don't exist.
-		for(int y = 1; y < picHeight; y++){
-			Pixel testPoint = new Pixel(newPicture, 0, y);
-			Pixel reference1 = new Pixel(this, 0, y-1);
-			if(((int) testPoint.colorDistance(reference1.getColor())) > threshold)
-				testPoint.updatePicture(255, 0, 0, 0);
-			else
-				testPoint.updatePicture(255, 255, 255, 255);
-		}
-		
-		//the final case is all the other pixels, where both the west and the northern pixels exist, compare to both and if one satisfies set it the black.
-		for(int x = 1; x < picWidth; x++){
-			for(int y = 1; y < picHeight; y++){
-				Pixel testPoint = new Pixel(newPicture, x, y);
-				Pixel reference1 = new Pixel(this, x, y-1);
-				Pixel reference2 = new Pixel(this, x-1, y);
-				if(((int) testPoint.colorDistance(reference1.getColor())) > threshold || 
-						((int) testPoint.colorDistance(reference2.getColor())) > threshold){
-					testPoint.updatePicture(255, 0, 0, 0);
-						
-				} else
-					testPoint.updatePicture(255, 255, 255, 255);
+		int[] raster = this.getFlatRaster();
+		int[] target = newPicture.getRaster();
+		int black = 0xff000000;
+		int white = 0xffffffff;
+		ColorThreshold limit = new ColorThreshold(threshold); //decides (int) distance > threshold on the squared distance, with no square root.
+
+		//every pixel only depends on the original picture, so the rows can be done band by band.
+		//each pixel is compared to the west and to the north, where those exist; the pixel at (0, 0) has neither and stays white.
+		getBandExecutor().run(picHeight, (fromY, toY) -> {
+			//tiled pixels, or pixels kept off the heap, are read a row at a time and left where they are; rows holds the row to the north, then the row itself.
+			int[] rows = raster == null ? new int[2 * picWidth] : null;
+			if(rows != null && fromY > 0)
+				this.getRow(fromY - 1, rows);
+			for(int y = fromY; y < toY; y++){
+				int[] source = raster;
+				int index, north;
+				if(raster != null){
+					index = this.rasterIndex(0, y);
+					north = index - this.getScanlineStride();
+				} else {
+					if(y > fromY)
+						System.arraycopy(rows, picWidth, rows, 0, picWidth);
+					this.getRow(y, rows, picWidth);
+					source = rows;
+					index = picWidth;
+					north = 0;
+				}
+				int newIndex = newPicture.rasterIndex(0, y);
+				for(int x = 0; x < picWidth; x++, index++, north++, newIndex++){
+					int value = source[index];
+					boolean edge = (x > 0 && limit.isBeyond(value, source[index-1])) ||
+							(y > 0 && limit.isBeyond(value, source[north]));
+					target[newIndex] = edge ? black : white;
+				}
 			}
-		}
+		});
+		//the raster was written directly, so the picture must be told.
+		newPicture.pixelsChanged();
 		return newPicture;
 	}
 
@@ -596,43 +758,48 @@ public class Picture extends SimplePicture
 	 * Note that the resultant Picture should be the exact same size
 	 * 	as the original Picture; this might involve characters being
 	 * 	partially copied to the final Picture. 
+	 * 
+	 * The work is done by an AsciiRenderer, which averages the gray values
+	 * 	without making a grayscale copy, and copies whole rows of the
+	 * 	characters at a time.
 	 */
 	public Picture convertToAscii() {
-		Picture newPicture = grayscale(); //clone the 'this' into a grayscale so we can ignore various values in the averaging.
-		int picHeight = newPicture.getHeight();
-		int picWidth = newPicture.getWidth();
-		
-		//runs through the pictures in 10x20 chunks, the size of the characters.
-		for(int x = 0; x < picWidth; x+=10){
-			for(int y = 0; y < picHeight; y+=20){
-				int average = 0;
-				int pixCount = 0;
-				//for each chunk it runs through all the pixels and averages them to get the fill level and corresponding character
-				for(int i = 0; i < 10; i++){
-					if(x+i == picWidth) break;
-					for(int j = 0; j < 20; j++){
-						if(y+j == picHeight) break;
-						pixCount++;
-						average += newPicture.getPixel(x+i, y+j).getRed(); //it would work with any of the RGB values, red was chosen for no particular reason.
-					}
-				}
-				average /= pixCount;
-				Picture ascii = getAsciiPic(average);
-				//this set of loops sets the pixels in the 10x20 chunk to the ASCII character values.
-				for(int i = 0; i < 10; i++){
-					if(x+i == picWidth) break;
-					for(int j = 0; j < 20; j++){
-						if(y+j == picHeight) break;
-						Pixel old = newPicture.getPixel(x+i, y+j);
-						Pixel fresh = ascii.getPixel(i, j);
-						old.updatePicture(fresh.getAlpha(), fresh.getRed(), fresh.getGreen(), fresh.getBlue());
-					}
-				}
-			}
-		}
+		EffectCache cache = effectCache;
+		if (cache == null)
+			return convertToAsciiUncached();
+		return withInfo(cache.convertToAscii(this));
+	}
+
+	/**
+	 * @see #convertToAscii
+	 */
+	Picture convertToAsciiUncached() {
+		Picture newPicture = blankCopy();
+		new AsciiRenderer(getBandExecutor()).render(this, newPicture);
 		return newPicture;
 	}
 
+	/**
+	 * Writes the characters convertToAscii would draw as text instead: one
+	 * 	line for every 20 rows of this Picture, ended by a newline, with
+	 * 	one character for every 10 columns. Only a row of this Picture is
+	 * 	kept in memory at a time.
+	 * 
+	 * @param out Where to write the text.
+	 * 
+	 * @throws IOException If out throws it.
+	 */
+	public void asciiText(Appendable out) throws IOException {
+		new AsciiRenderer(BandExecutor.SERIAL).text(this, out);
+	}
+
+	/**
+	 * @return The lines asciiText would write, without newlines.
+	 */
+	public List<String> asciiLines() {
+		return new AsciiRenderer(BandExecutor.SERIAL).lines(this);
+	}
+
 	/**
 	 * Blurs this Picture. To achieve this, the algorithm takes a pixel, and
 	 * sets it to the average value of all the pixels in a square of side (2 *
@@ -646,6 +813,15 @@ public class Picture extends SimplePicture
 	 * 
 	 * The red, blue, green and alpha values should each be averaged separately.
 	 * 
+	 * The square is never summed pixel by pixel. Instead, the sums of each
+	 * column of the square are kept as the square slides down the picture,
+	 * and the sum of those column sums is kept as it slides across a row.
+	 * Each step adds what enters the square and subtracts what leaves it,
+	 * so the time taken per pixel does not depend on blurThreshold. Each
+	 * band only keeps sums for one row of columns, so blurring needs no
+	 * more memory than a few rows, and an IntegralImage of the picture is
+	 * never built.
+	 * 
 	 * @param blurThreshold
 	 *            Size of the blurring square around the pixel.
 	 * 
@@ -653,41 +829,100 @@ public class Picture extends SimplePicture
 	 *         a blurring square of size (2 * threshold) + 1.
 	 */
 	public Picture blur(int blurThreshold){
-		Picture newPicture = new Picture(this); //clone the picture
+		if(blurThreshold < 0)
+			throw new IllegalArgumentException("The blur threshold cannot be negative.");
+		EffectCache cache = effectCache;
+		if(cache == null)
+			return blurUncached(blurThreshold);
+		return withInfo(cache.blur(this, blurThreshold));
+	}
+
+	/**
+	 * @see #blur
+	 */
+	Picture blurUncached(int blurThreshold){
+		Picture newPicture = blankCopy(); //every pixel is written, so none are copied
 		int picHeight = newPicture.getHeight();
 		int picWidth = newPicture.getWidth();
+		//a square larger than the picture covers the same pixels as one just as large, and this keeps the indices below from overflowing.
+		int radius = Math.min(blurThreshold, Math.max(picWidth, picHeight));
+		int[] raster = this.getFlatRaster();
+		int[] target = newPicture.getRaster();
 		
-		//sets up the double nested for loop to iterate through every pixel in the picture
-		for(int x = 0; x < picWidth; x++){
-			for(int y = 0; y < picHeight; y++){
-				Pixel testPix = newPicture.getPixel(x, y); // get the pixel that will be changed in the new picture
-				int aveA = 0, aveR = 0, aveG = 0, aveB = 0, pixCount = 0; //set up the averagers
-				
-				//this is the inner double nested for loops to iterate through the box to average around.
-				//I've used the shorthand if notation to simplify the amount of set up.
-				//these loop run from -blurThreshold to +blurThreshold.
-				for(int i = x - blurThreshold < 0 ? x * -1 : blurThreshold * -1; i <= blurThreshold; i++){
-					if(x+i == picWidth) break;
-					for(int j = y - blurThreshold < 0 ? y * -1 : blurThreshold * -1; j <= blurThreshold; j++){
-						if(y+j == picHeight) break;
-						Pixel ref = this.getPixel(x+i, y+j); //the pixel that we are summing. !!taken from the original picture.
-						aveA += ref.getAlpha();
-						aveR += ref.getRed();
-						aveG += ref.getGreen();
-						aveB += ref.getBlue();
-						pixCount++; //increase the pixel count, because in the edge cases we aren't certain the pixel count is always static.
+		//each band keeps its own column sums, so bands can run side by side.
+		getBandExecutor().run(picHeight, (fromY, toY) -> {
+			//colA[x] and friends hold the sums of column x over the rows of the square around the current row.
+			int[] colA = new int[picWidth], colR = new int[picWidth], colG = new int[picWidth], colB = new int[picWidth];
+			//tiled pixels, or pixels kept off the heap, are read a row at a time and left where they are.
+			int[] row = raster == null ? new int[picWidth] : null;
+			for(int j = Math.max(0, fromY - radius); j <= Math.min(picHeight - 1, fromY + radius); j++)
+				addRow(raster, row, j, 1, colA, colR, colG, colB);
+			
+			for(int y = fromY; y < toY; y++){
+				int rowCount = Math.min(picHeight - 1, y + radius) - Math.max(0, y - radius) + 1;
+				long sumA = 0, sumR = 0, sumG = 0, sumB = 0;
+				//start the square at the left edge, where it is cut off by the edge of the picture.
+				for(int i = 0; i <= Math.min(picWidth - 1, radius); i++){
+					sumA += colA[i]; sumR += colR[i]; sumG += colG[i]; sumB += colB[i];
+				}
+				int index = newPicture.rasterIndex(0, y);
+				for(int x = 0; x < picWidth; x++, index++){
+					//only the pixels that exist are counted, just as when the square is cut off by an edge.
+					int pixCount = (Math.min(picWidth - 1, x + radius) - Math.max(0, x - radius) + 1) * rowCount;
+					target[index] = (int) (sumA / pixCount) << 24 | (int) (sumR / pixCount) << 16 |
+							(int) (sumG / pixCount) << 8 | (int) (sumB / pixCount);
+					
+					//slide the square one pixel right: the column on the right enters, the one on the left leaves.
+					int enter = x + radius + 1, leave = x - radius;
+					if(enter < picWidth){
+						sumA += colA[enter]; sumR += colR[enter]; sumG += colG[enter]; sumB += colB[enter];
+					}
+					if(leave >= 0){
+						sumA -= colA[leave]; sumR -= colR[leave]; sumG -= colG[leave]; sumB -= colB[leave];
 					}
 				}
-				aveA /= pixCount;
-				aveR /= pixCount;
-				aveG /= pixCount;
-				aveB /= pixCount;
-				testPix.updatePicture(aveA, aveR, aveG, aveB);
+				
+				//slide the square one row down: the row below enters the column sums, the row on top leaves.
+				if(y + 1 < toY){
+					if(y + radius + 1 < picHeight)
+						addRow(raster, row, y + radius + 1, 1, colA, colR, colG, colB);
+					if(y - radius >= 0)
+						addRow(raster, row, y - radius, -1, colA, colR, colG, colB);
+				}
 			}
-		}
+		});
+		newPicture.pixelsChanged();
 		return newPicture;
 	}
-	
+
+	/**
+	 * Helper method for blur() that adds one row of pixels of this Picture,
+	 * 	channel by channel, into column sums.
+	 * 
+	 * @param raster The raster of this Picture, or null if its pixels are
+	 * 	tiled or kept off the heap.
+	 * @param row An array of the width of this Picture, to read the row
+	 * 	into when raster is null.
+	 * @param y The y-coordinate of the row.
+	 * @param sign 1 to add the row, or -1 to subtract it.
+	 * @param colA The alpha column sums.
+	 * @param colR The red column sums.
+	 * @param colG The green column sums.
+	 * @param colB The blue column sums.
+	 */
+	private void addRow(int[] raster, int[] row, int y, int sign,
+			int[] colA, int[] colR, int[] colG, int[] colB) {
+		int[] source = raster != null ? raster : this.getRow(y, row);
+		int index = raster != null ? this.rasterIndex(0, y) : 0;
+		for (int x = 0; x < colA.length; x++, index++) {
+			int value = source[index];
+			colA[x] += sign * Pixel.getAlpha(value);
+			colR[x] += sign * Pixel.getRed(value);
+			colG[x] += sign * Pixel.getGreen(value);
+			colB[x] += sign * Pixel.getBlue(value);
+		}
+	}
+
 	/**
 	 * @param xReference x-coordinate of the pixel currently selected.
 	 * @param yReference y-coordinate of the pixel currently selected.
@@ -701,55 +936,20 @@ public class Picture extends SimplePicture
 	 */
 	public Picture paintBucket(int xReference, int yReference, int threshold, Color newColor) {
 		Picture newPicture = new Picture(this); //the picture resource that will be modified
-		Color base = this.getPixel(xReference, yReference).getColor(); // the original base color to compare against
-		int picHeight = this.getHeight(); //saving time, saving the int of the picture height and width as ints beforehand.
+		int base = this.getBasicPixel(xReference, yReference); // the original base color to compare against
+		int newRGB = newColor.getRGB() & 0x00ffffff;
 		int picWidth = this.getWidth();
+		ColorThreshold limit = new ColorThreshold(threshold);
 
-		int x = 0, y = 0;
-		ArrayList<Integer> queue = new ArrayList<Integer>(); //the arrayList to hold all the points with x preceding y always.
-		queue.add(xReference); //add the x reference int
-		queue.add(yReference); //add the y reference int
+		//finds every pixel connected to the reference, diagonals included, that is within the threshold of the base color. colors are always tested on the original picture.
+		BitSet region = FloodFill.region(this, xReference, yReference,
+				value -> limit.isWithin(value, base));
 		
-		//the main driver loop for Paint Bucker. This is based on a Queue, which holds all the points that need to be filled in. implemented as ints because of speed.
-		for(int i = 0; i < queue.size(); i++){ 
-			x = queue.get(i++); //grabs the x coordinate then iterates
-			y = queue.get(i); // grabs the y coordinate
-			Pixel current = newPicture.getPixel(x, y); //because we already know the pixel read in has been tested, whether because its the start or another point we go ahead an set it
-			current.setColor(newColor);
-			int[][] points = new int[8][2]; //an array to hold the surround points to be tested
-			points[0][0] = x+1; points[0][1] = y;
-			points[1][0] = x-1; points[1][1] = y;
-			points[2][0] = x;   points[2][1] = y+1;
-			points[3][0] = x;   points[3][1] = y-1;
-			points[4][0] = x+1; points[4][1] = y-1;
-			points[5][0] = x-1; points[5][1] = y-1;
-			points[6][0] = x-1; points[6][1] = y+1;
-			points[7][0] = x+1; points[7][1] = y+1;
-			
-			//The test loop to test the points for validity and then add the to the array if they are valid.
-			for(int[] p : points){
-				int x2 = p[0];
-				int y2 = p[1];
-				boolean contained = true;
-				
-				//a loop to test if they are already in the array and therefore do not need to be added again
-				for(int k = 0; k < queue.size()-1; k+=2){
-					if(queue.get(k) == x2 && queue.get(k+1) == y2){
-						contained = false;
-						break;
-					}
-						
-				}
-				// this clause makes sure the pixel is within the picture, and then adds them to the queue if it is.
-				if(x2 >= 0 && x2 < picWidth && y2 >= 0 && y2 < picHeight && contained){
-					Pixel pix = this.getPixel(x2, y2);
-					if((int) pix.colorDistance(base) < threshold){
-						queue.add(x2);
-						queue.add(y2);
-
-					}
-				}
-			}		
+		//the region holds each pixel as y * width + x; color them all in, keeping their alpha.
+		//newPicture only copies the tiles of this picture that it writes into, so a small region costs little.
+		for(int i = region.nextSetBit(0); i >= 0; i = region.nextSetBit(i + 1)){
+			int x = i % picWidth, y = i / picWidth;
+			newPicture.setBasicPixel(x, y, (this.getBasicPixel(x, y) & 0xff000000) | newRGB);
 		}
 		//return the newpicture, leavin the original unblemished.
 		return newPicture;
@@ -757,25 +957,47 @@ public class Picture extends SimplePicture
 
 	///////////////////////// PROJECT 1 ENDS HERE /////////////////////////////
 
+	/**
+	 * @return True, if obj is a Picture of the same size, with the same
+	 * 	packed ARGB value for every pixel. Whole rows are compared at
+	 * 	once, with Arrays.equals, straight from the raster when the pixels
+	 * 	are held in one.
+	 */
 	public boolean equals(Object obj) {
+		if (obj == this) {
+			return true;
+		}
 		if (!(obj instanceof Picture)) {
 			return false;
 		}
 
 		Picture p = (Picture) obj;
+		int width = this.getWidth();
 		// Check that the two pictures have the same dimensions.
-		if ((p.getWidth() != this.getWidth()) ||
+		if ((p.getWidth() != width) ||
 				(p.getHeight() != this.getHeight())) {
 			return false;
 		}
 
-		// Check each pixel.
-		for (int x = 0; x < this.getWidth(); x++) {
-			for(int y = 0; y < this.getHeight(); y++) {
-				if (!this.getPixel(x, y).equals(p.getPixel(x, y))) {
-					System.out.println(x + ", " + y);
-					return false;
-				}
+		// Check each row; rows that are tiled or off the heap are copied out first.
+		int[] raster = this.getFlatRaster();
+		int[] otherRaster = p.getFlatRaster();
+		int[] row = raster == null ? new int[width] : null;
+		int[] otherRow = otherRaster == null ? new int[width] : null;
+		for (int y = 0; y < this.getHeight(); y++) {
+			int[] pixels = raster, otherPixels = otherRaster;
+			int from = 0, otherFrom = 0;
+			if (raster != null)
+				from = this.rasterIndex(0, y);
+			else
+				pixels = this.getRow(y, row);
+			if (otherRaster != null)
+				otherFrom = p.rasterIndex(0, y);
+			else
+				otherPixels = p.getRow(y, otherRow);
+			if (!Arrays.equals(pixels, from, from + width,
+					otherPixels, otherFrom, otherFrom + width)) {
+				return false;
 			}
 		}
 
@@ -783,64 +1005,98 @@ public class Picture extends SimplePicture
 	}
 
 	/**
-	 * Helper method for loading a picture in the current directory.
+	 * @return A hash code made from contentHash(), so that equal Pictures
+	 * 	have equal hash codes. A Picture used as a key in a map must not
+	 * 	change while it is there.
 	 */
-	protected static Picture loadPicture(String pictureName) {
-		URL url = Picture.class.getResource(pictureName);
-		return new Picture(url.getFile().replaceAll("%20", " "));
+	public int hashCode() {
+		long hash = contentHash();
+		return (int) (hash ^ (hash >>> 32));
 	}
 
 	/**
-	 * Helper method for loading the pictures corresponding to each character
-	 * 	for the ASCII art conversion.
+	 * The hash is computed the first time it is asked for and kept until
+	 * 	the pixels of this Picture change. It is not kept while a
+	 * 	BufferedImage or Graphics that writes the pixels has been handed
+	 * 	out, since writes through those are not seen. It must not be asked
+	 * 	for while another thread is changing the pixels.
+	 * 
+	 * @return The PixelHash, an xxHash64, of the width, height, and pixels
+	 * 	of this Picture. It is the same in every run, but being only 64
+	 * 	bits, different Pictures may share one; see digest.
 	 */
-	private static Picture getAsciiPic(int grayValue) {
-		int asciiIndex = (int) grayValue / 19;
+	public long contentHash() {
+		Long hash = contentHash;
+		if (hash == null || isImageHandedOut()) {
+			hash = PixelHash.of(this);
+			contentHash = isImageHandedOut() ? null : hash;
+		}
+		return hash;
+	}
 
-		if (BMP_AMPERSAND == null) {
-			BMP_AMPERSAND = Picture.loadPicture("ampersand.bmp");
-			BMP_APOSTROPHE = Picture.loadPicture("apostrophe.bmp");
-			BMP_AT = Picture.loadPicture("at.bmp");
-			BMP_BAR = Picture.loadPicture("bar.bmp");
-			BMP_COLON = Picture.loadPicture("colon.bmp");
-			BMP_DOLLAR = Picture.loadPicture("dollar.bmp");
-			BMP_DOT = Picture.loadPicture("dot.bmp");
-			BMP_EXCLAMATION = Picture.loadPicture("exclamation.bmp");
-			BMP_GRAVE = Picture.loadPicture("grave.bmp");
-			BMP_HASH = Picture.loadPicture("hash.bmp");
-			BMP_PERCENT = Picture.loadPicture("percent.bmp");
-			BMP_SEMICOLON = Picture.loadPicture("semicolon.bmp");
-			BMP_SPACE = Picture.loadPicture("space.bmp");
+	/**
+	 * The digest is kept just as the content hash is: from the first time
+	 * 	it is asked for until the pixels of this Picture change, and not
+	 * 	while a BufferedImage or Graphics that writes the pixels has been
+	 * 	handed out.
+	 * 
+	 * @return The SHA-256 digest of the width, the height, and the pixels of
+	 * 	this Picture, each as 4 big-endian bytes, in hexadecimal. Pictures
+	 * 	with the same digest can be taken to be equal, in any process; it
+	 * 	is several times slower to compute than contentHash.
+	 */
+	public String digest() {
+		String hex = digest;
+		if (hex == null || isImageHandedOut()) {
+			hex = sha256();
+			digest = isImageHandedOut() ? null : hex;
 		}
+		return hex;
+	}
 
-		switch(asciiIndex) {
-		case 0:
-			return Picture.BMP_HASH;
-		case 1:
-			return Picture.BMP_AT;
-		case 2:
-			return Picture.BMP_AMPERSAND;
-		case 3:
-			return Picture.BMP_DOLLAR;
-		case 4: 
-			return Picture.BMP_PERCENT;
-		case 5:
-			return Picture.BMP_BAR;
-		case 6: 
-			return Picture.BMP_EXCLAMATION;
-		case 7:
-			return Picture.BMP_SEMICOLON;
-		case 8:
-			return Picture.BMP_COLON;
-		case 9: 
-			return Picture.BMP_APOSTROPHE;
-		case 10:
-			return Picture.BMP_GRAVE;
-		case 11:
-			return Picture.BMP_DOT;
-		default:
-			return Picture.BMP_SPACE;
+	/**
+	 * @see #digest
+	 */
+	private String sha256() {
+		MessageDigest sha;
+		try {
+			sha = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			// Every Java platform is required to have SHA-256.
+			throw new IllegalStateException(ex);
 		}
+		int width = getWidth();
+		ByteBuffer bytes = ByteBuffer.allocate(Math.max(8, width * 4));
+		bytes.putInt(width).putInt(getHeight());
+		sha.update(bytes.array(), 0, 8);
+		int[] row = new int[width];
+		for (int y = 0; y < getHeight(); y++) {
+			bytes.clear();
+			bytes.asIntBuffer().put(getRow(y, row));
+			sha.update(bytes.array(), 0, width * 4);
+		}
+
+		StringBuilder hex = new StringBuilder();
+		for (byte b : sha.digest())
+			hex.append(String.format("%02x", b));
+		return hex.toString();
+	}
+
+	/**
+	 * Helper method for loading a picture in the current directory.
+	 */
+	protected static Picture loadPicture(String pictureName) {
+		URL url = Picture.class.getResource(pictureName);
+		return new Picture(url.getFile().replaceAll("%20", " "));
+	}
+
+	/**
+	 * Helper method for getting the picture corresponding to each character
+	 * 	for the ASCII art conversion, from GlyphSet.getDefault().
+	 */
+	static Picture getAsciiPic(int grayValue) {
+		GlyphSet glyphs = GlyphSet.getDefault();
+		return glyphs.getGlyph(glyphs.level(grayValue));
 	}
 
 	public static void main(String[] args) {
@@ -1,10 +1,12 @@
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.*;
-import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.border.*;
 
@@ -157,9 +159,18 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
 	private static final String blueLabel = "B: ";
 	private static final String cannotShowText = "N/A";
 
+	// Effect progress bar, shown while an effect runs.
+	private JPanel progressPanel;
+	private JProgressBar progressBar;
+	private JButton cancelButton;
+	private static final String cancel = "Cancel";
+
 	/** The Picture being explored. */
 	private Picture picture;
 
+	/** The EffectWorker running an effect, or null if none is. */
+	private EffectWorker effectWorker;
+
 	/** The ImageDisplay. */
 	private ImageDisplay imageDisplay;
 
@@ -372,6 +383,31 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
 		pictureFrame.validate();
 	}
 
+	/**
+	 * Creates the south JPanel with the progress bar and cancel button
+	 * 	shown while an effect runs.
+	 */
+	private void createProgressPanel() {
+		progressPanel = new JPanel();
+		progressPanel.setLayout(new BorderLayout());
+		progressBar = new JProgressBar(0, 100);
+		progressBar.setStringPainted(true);
+		cancelButton = new JButton(cancel);
+		cancelButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (effectWorker != null && effectWorker.cancel(false)) {
+					// The effect may still run until its current band ends.
+					progressBar.setString("Cancelling");
+					cancelButton.setEnabled(false);
+				}
+			}
+		});
+		progressPanel.add(BorderLayout.CENTER, progressBar);
+		progressPanel.add(BorderLayout.EAST, cancelButton);
+		progressPanel.setVisible(false);
+		pictureFrame.getContentPane().add(BorderLayout.SOUTH, progressPanel);
+	}
+
 	/**
 	 * Creates the JFrame and sets everything up.
 	 */
@@ -388,6 +424,9 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
 		// Create the scrollpane for the picture.
 		createAndInitScrollingImage();
 
+		// Create the progress bar for effects.
+		createProgressPanel();
+
 		// Show the picture in the frame at the size it needs to be.
 		pictureFrame.pack();
 		pictureFrame.setVisible(true);
@@ -919,10 +958,7 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
 					else
 						fileName = fileName + "." + extension;
 
-					File file = new File(fileName);
-					
-					ImageIO.write(picture.getBufferedImage(),
-							picture.getExtension(), file);
+					picture.writeOrFail(fileName);
 				} catch (IOException e) {
 					JOptionPane.showMessageDialog(pictureFrame,
 						    "Could not save file. If you have added an " +
@@ -982,98 +1018,145 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
 		}
 
 		if (a.getActionCommand().equals(grayscale)) {
-			picture = new Picture(picture.grayscale());
-			createAndInitScrollingImage();
+			runEffect(grayscale, p -> p.grayscale());
 		}
 		if (a.getActionCommand().equals(negate)) {
-			picture = new Picture(picture.negate());
-			createAndInitScrollingImage();
+			runEffect(negate, p -> p.negate());
 		}
 
 		if (a.getActionCommand().equals(chromakey)) {
 			int threshold =  getParameterValue("the color threshold", 1, 100);			
-			picture = new Picture(picture.chromaKey(xIndex, yIndex, new Picture(FileChooser.pickAFile(FileChooser.OPEN)), threshold));
-			createAndInitScrollingImage();
+			Picture background = new Picture(FileChooser.pickAFile(FileChooser.OPEN));
+			int x = xIndex, y = yIndex;
+			runEffect(chromakey, p -> p.chromaKey(x, y, background, threshold));
 		}
 		if (a.getActionCommand().equals(rotate)) {
-			picture = new Picture(picture.rotate(1));
-			createAndInitScrollingImage();
+			runEffect(rotate, p -> p.rotate(1));
 		}
 		if (a.getActionCommand().equals(blur)) {
-			int blurThreshold =  getParameterValue("the blur threshold", 1, 5);
-			picture = new Picture(picture.blur(blurThreshold));
-			createAndInitScrollingImage();
+			int blurThreshold =  getParameterValue("the blur threshold", 1, 100);
+			runEffect(blur, p -> p.blur(blurThreshold));
 		}
 		if (a.getActionCommand().equals(showEdges)) {
 			int threshold =  getParameterValue("the edge threshold", 1, 100);
-			picture = new Picture(picture.showEdges(threshold));
-			createAndInitScrollingImage();
+			runEffect(showEdges, p -> p.showEdges(threshold));
 		}
 		if (a.getActionCommand().equals(flipHorz)) {
-			picture = picture.flip(Picture.HORIZONTAL);
-			// repaint();
-			createAndInitScrollingImage();
+			runEffect(flipHorz, p -> p.flip(Picture.HORIZONTAL));
 		}
 		if (a.getActionCommand().equals(flipVert)) {
-			picture = picture.flip(Picture.VERTICAL);
-			// repaint();
-			createAndInitScrollingImage();
+			runEffect(flipVert, p -> p.flip(Picture.VERTICAL));
 		}
 		if (a.getActionCommand().equals(flipForward)) {
-			picture = picture.flip(Picture.FORWARD_DIAGONAL);
-			// repaint();
-			createAndInitScrollingImage();
+			runEffect(flipForward, p -> p.flip(Picture.FORWARD_DIAGONAL));
 		}
 		if (a.getActionCommand().equals(flipBackward)) {
-			picture = picture.flip(Picture.BACKWARD_DIAGONAL);
-			// repaint();
-			createAndInitScrollingImage();
+			runEffect(flipBackward, p -> p.flip(Picture.BACKWARD_DIAGONAL));
 		}
 		if (a.getActionCommand().equals(ascii)) {
-			picture = new Picture(picture.convertToAscii());
-			createAndInitScrollingImage();
+			runEffect(ascii, p -> p.convertToAscii());
 		}
 		if (a.getActionCommand().equals(paintBucket)) {
 			int threshold =  getParameterValue("the color threshold", 1, 100);
-			picture = new Picture(picture.paintBucket(xIndex, yIndex, threshold, new Color(0, 0, 255)));
-			createAndInitScrollingImage();
+			int x = xIndex, y = yIndex;
+			runEffect(paintBucket, p -> p.paintBucket(x, y, threshold, new Color(0, 0, 255)));
 		}
 		if (a.getActionCommand().equals(lighten)) {
 			int value =  getParameterValue("the amount to increase all colors ", 1, 255);
-			picture = new Picture(picture.lighten(value));
-			createAndInitScrollingImage();
+			runEffect(lighten, p -> p.lighten(value));
 		}
 		if (a.getActionCommand().equals(darken)) {
 			int value =  getParameterValue("the amount to decrease all colors ", 1, 255);
-			picture = new Picture(picture.darken(value));
-			createAndInitScrollingImage();
+			runEffect(darken, p -> p.darken(value));
 		}
 		if (a.getActionCommand().equals(addRed)) {
 			int value =  getParameterValue("the amount to increase red", 1, 255);
-			picture = new Picture(picture.addRed(value));
-			createAndInitScrollingImage();
+			runEffect(addRed, p -> p.addRed(value));
 		}
 		if (a.getActionCommand().equals(addGreen)) {
 			int value =  getParameterValue("the amount to increase green", 1, 255);
-			picture = new Picture(picture.addGreen(value));
-			createAndInitScrollingImage();
+			runEffect(addGreen, p -> p.addGreen(value));
 		}
 		if (a.getActionCommand().equals(addBlue)) {
 			int value =  getParameterValue("the amount to increase blue", 1, 255);
-			picture = new Picture(picture.addBlue(value));
-			createAndInitScrollingImage();
+			runEffect(addBlue, p -> p.addBlue(value));
+		}
+	}
+
+	/**
+	 * Runs an effect on the picture in an EffectWorker, off the Event
+	 * 	Dispatch Thread, so that the window keeps working meanwhile. The
+	 * 	progress bar shows how far the effect has got, and its cancel button
+	 * 	stops it; once it finishes, its result replaces the picture.
+	 * 
+	 * @param name The name of the effect, to show on the progress bar.
+	 * @param effect Runs the effect on a picture and returns the result.
+	 */
+	private void runEffect(String name, UnaryOperator<Picture> effect) {
+		if (effectWorker != null)
+			return;
+		effectWorker = new EffectWorker(picture, effect);
+		effectWorker.addPropertyChangeListener(e -> {
+			if ("progress".equals(e.getPropertyName()))
+				progressBar.setValue((Integer) e.getNewValue());
+		});
+		setEffectItemsEnabled(false);
+		progressBar.setValue(0);
+		progressBar.setString(name);
+		cancelButton.setEnabled(true);
+		progressPanel.setVisible(true);
+		pictureFrame.validate();
+		effectWorker.execute();
+	}
+
+	/**
+	 * Enables or disables the menus of effects, and opening a file, which
+	 * 	must not change the picture while an effect runs on it.
+	 * 
+	 * @param enabled True, to enable them.
+	 */
+	private void setEffectItemsEnabled(boolean enabled) {
+		pictureEffectsMenu.setEnabled(enabled);
+		rotateflipMenu.setEnabled(enabled);
+		changeColorMenu.setEnabled(enabled);
+		openMenuItem.setEnabled(enabled);
+	}
+
+	/**
+	 * Called on the Event Dispatch Thread once an effect has finished or
+	 * 	been cancelled, and its doInBackground has returned, so that no
+	 * 	other effect can start while it still runs.
+	 * 
+	 * @param worker The EffectWorker that ran it.
+	 */
+	private void effectDone(EffectWorker worker) {
+		effectWorker = null;
+		progressPanel.setVisible(false);
+		setEffectItemsEnabled(true);
+		if (!worker.isCancelled()) {
+			try {
+				// The result is already a new Picture; it needs no copy.
+				picture = worker.get();
+				createAndInitScrollingImage();
+			} catch (ExecutionException e) {
+				if (!(e.getCause() instanceof CancellationException))
+					JOptionPane.showMessageDialog(pictureFrame,
+						    "The effect failed: " + e.getCause(),
+						    "Effect Error",
+						    JOptionPane.ERROR_MESSAGE);
+			} catch (InterruptedException e) {
+				// get() does not wait once the worker is done.
+			}
 		}
+		pictureFrame.validate();
 	}
 
 	/**
 	 * Saves the file corresponding to the current picture.
 	 */
 	private void saveFile() {
-		File file = new File(picture.getFileName());
-
 		try {
-			ImageIO.write(picture.getBufferedImage(),
-					picture.getExtension(), file);
+			picture.writeOrFail(picture.getFileName());
 		} catch (IOException e) {
 			JOptionPane.showMessageDialog(pictureFrame,
 				    "Could not save file.",
@@ -1121,6 +1204,95 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
 		}
 
 	}
+	/**
+	 * Class that runs an effect on a background thread. It is the Monitor
+	 * 	of the BandExecutor the effect runs on, so the effect reports its
+	 * 	progress as bands of rows finish, and stops at the next band once
+	 * 	the worker is cancelled. Effects that do not run on a BandExecutor
+	 * 	show no progress, and their result is dropped if cancelled.
+	 * 
+	 * The effect runs on a copy of the picture, which shares its pixels
+	 * 	until written to, so that the BandExecutor of the picture itself is
+	 * 	never changed from another thread.
+	 * 
+	 * A cancelled SwingWorker calls done() at once, while doInBackground may
+	 * 	still be running; the explorer is only told the effect is over once
+	 * 	both have happened.
+	 */
+	private class EffectWorker extends SwingWorker<Picture, Void>
+	implements BandExecutor.Monitor {
+
+		/** The Picture whose copy the effect runs on. */
+		private final Picture source;
+
+		/** The BandExecutor of source, which reports to this worker. */
+		private final BandExecutor executor;
+
+		/** The effect. */
+		private final UnaryOperator<Picture> effect;
+
+		/** Number of rows finished so far. */
+		private final AtomicLong rowsDone = new AtomicLong();
+
+		/** True once done() has been called. Only used on the EDT. */
+		private boolean doneCalled;
+
+		/** True once doInBackground has returned. Only used on the EDT. */
+		private boolean returned;
+
+		/**
+		 * Creates a worker for an effect on a Picture.
+		 */
+		EffectWorker(Picture source, UnaryOperator<Picture> effect) {
+			this.source = source;
+			this.effect = effect;
+			executor = source.getBandExecutor().withMonitor(this);
+		}
+
+		/**
+		 * Runs the effect on a copy of source, on a thread of its own.
+		 */
+		protected Picture doInBackground() {
+			try {
+				Picture copy = new Picture(source);
+				copy.setBandExecutor(executor);
+				return effect.apply(copy);
+			} finally {
+				SwingUtilities.invokeLater(() -> {
+					returned = true;
+					finishIfOver();
+				});
+			}
+		}
+
+		/**
+		 * Sets the progress, as a percentage of the rows. An effect that
+		 * 	runs over its rows more than once stays at 100 once its first
+		 * 	pass is done.
+		 */
+		public void rowsDone(int rows, int height) {
+			long done = rowsDone.addAndGet(rows);
+			setProgress((int) Math.min(100, 100 * done / height));
+		}
+
+		/**
+		 * Tells the explorer the effect is over.
+		 */
+		protected void done() {
+			doneCalled = true;
+			finishIfOver();
+		}
+
+		/**
+		 * Tells the explorer the effect is over, once done() has been called
+		 * 	and doInBackground has returned.
+		 */
+		private void finishIfOver() {
+			if (doneCalled && returned)
+				effectDone(this);
+		}
+	}
+
 	/**
 	 * Class for establishing the focus for the textfields.
 	 */
@@ -272,6 +272,834 @@ public class PictureTest extends TestCase {
 		assertTrue(pic.equals(picCopy));
 		assertTrue(picCorrect.equals(picTest));
 	}
+	/*
+	 * Validate that the raster holds the same packed values as
+	 * getBasicPixel, and that a copy does not share it.
+	 */
+	public void testRasterCopy()
+	{
+		Picture pic         = Picture.loadPicture("CalOriginal.bmp");
+		Picture picCopy     = new Picture(pic);
+		int[] row           = pic.getRow(3, new int[pic.getWidth()]);
+		assertTrue(row[5] == pic.getBasicPixel(5, 3));
+		assertTrue(pic.getRaster()[pic.rasterIndex(5, 3)] == row[5]);
+		assertTrue(pic.getRaster() != picCopy.getRaster());
+		row[5] = ~row[5];
+		picCopy.setRow(3, row);
+		assertTrue(picCopy.getBasicPixel(5, 3) == row[5]);
+		assertTrue(pic.getBasicPixel(5, 3) == ~row[5]);
+	}
+	/*
+	 * Validate that a PixelCursor reads and writes the same pixels
+	 * as a Pixel at the same location.
+	 */
+	public void testPixelCursor()
+	{
+		Picture pic         = Picture.loadPicture("Creek.bmp");
+		PixelCursor cursor  = new PixelCursor(pic);
+		Pixel pixel         = pic.getPixel(7, 9);
+		cursor.moveTo(7, 9);
+		assertTrue(cursor.getARGB() == pic.getBasicPixel(7, 9));
+		assertTrue(cursor.getAverage() == pixel.getAverage());
+		assertTrue(cursor.colorDistance(0x102030)
+				== pixel.colorDistance(new Color(0x10, 0x20, 0x30)));
+		cursor.setRGB(0x102030);
+		assertTrue(pixel.getAlpha() == 255);
+		assertTrue(pixel.getColor().equals(new Color(0x10, 0x20, 0x30)));
+		pixel.setColor(0x405060);
+		assertTrue(cursor.getARGB() == 0xff405060);
+	}
+	/*
+	 * Validate that mapPixels and forEachPixel visit every pixel once
+	 * and that mapPixels does not modify the original Picture object.
+	 */
+	public void testPixelKernels()
+	{
+		Picture pic         = Picture.loadPicture("CalOriginal.bmp");
+		Picture picCopy     = new Picture(pic);
+		Picture picTest     = pic.mapPixels(value -> ~value);
+		assertTrue(pic.equals(picCopy));
+		assertTrue(picTest.getBasicPixel(9, 4) == ~pic.getBasicPixel(9, 4));
+		final int[] sum = new int[1];
+		pic.forEachPixel((x, y, value) -> {
+			assertTrue(value == pic.getBasicPixel(x, y));
+			sum[0]++;
+		});
+		assertTrue(sum[0] == pic.getWidth() * pic.getHeight());
+	}
+	/*
+	 * Validate that the lookup tables correct values to be within
+	 * 0 and 255 and never touch alpha.
+	 */
+	public void testChannelLut()
+	{
+		ChannelLut lighter  = ChannelLut.shift(300, -300, 10);
+		assertTrue(lighter.apply(0x80102030) == 0x80ff003a);
+		assertTrue(ChannelLut.negate().apply(0xff102030) == 0xffefdfcf);
+		assertTrue(ChannelLut.grayscale().apply(0x7f0a0b0f) == 0x7f0c0c0c);
+		assertTrue(ChannelLut.identity().apply(0x12345678) == 0x12345678);
+	}
+	/*
+	 * Validate that a PointPipeline gives the same result as chaining
+	 * the effects directly, including the correcting of intermediate
+	 * values, and does not modify the original Picture object.
+	 */
+	public void testPointPipeline()
+	{
+		Picture pic         = Picture.loadPicture("Creek.bmp");
+		Picture picCopy     = new Picture(pic);
+		Picture picCorrect  = pic.lighten(100).grayscale().darken(50)
+				.grayscale().negate().addRed(70).grayscale().addBlue(-40);
+		PointPipeline ops   = pic.pointOps().lighten(100).grayscale()
+				.darken(50).grayscale().negate().addRed(70).grayscale()
+				.addBlue(-40);
+		Picture picTest     = ops.materialize();
+		assertTrue(pic.equals(picCopy));
+		assertTrue(picCorrect.equals(picTest));
+		assertTrue(ops.getStageCount() == 2);
+		assertTrue(pic.lighten(200).darken(200).equals(
+				pic.pointOps().lighten(200).darken(200).materialize()));
+	}
+	/*
+	 * Validate that a monitored BandExecutor reports every row, gives the
+	 * same pixels, and stops an effect once its Monitor cancels it.
+	 */
+	public void testBandMonitor()
+	{
+		Picture pic         = Picture.loadPicture("Creek.bmp");
+		Picture picCorrect  = Picture.loadPicture("Creek_blur.bmp");
+		final int[] rows    = new int[1];
+		final boolean[] cancelled = new boolean[1];
+		BandExecutor.Monitor monitor = new BandExecutor.Monitor() {
+			public synchronized void rowsDone(int done, int height) {
+				rows[0] += done;
+			}
+			public boolean isCancelled() {
+				return cancelled[0];
+			}
+		};
+		BandExecutor[] executors = { BandExecutor.SERIAL,
+				BandExecutor.parallel() };
+		for (BandExecutor executor : executors) {
+			rows[0]         = 0;
+			cancelled[0]    = false;
+			pic.setBandExecutor(executor.withMonitor(monitor));
+			assertTrue(picCorrect.equals(pic.blur(3)));
+			assertTrue(rows[0] == pic.getHeight());
+			cancelled[0]    = true;
+			try {
+				pic.blur(3);
+				fail();
+			} catch (java.util.concurrent.CancellationException ex) { }
+		}
+		pic.setBandExecutor(null);
+	}
+	/*
+	 * Validate that DiskEffectCache finds results written by another
+	 * DiskEffectCache on the same directory, and keeps under its cap.
+	 */
+	public void testDiskEffectCache() throws java.io.IOException
+	{
+		java.io.File directory = java.nio.file.Files.createTempDirectory(
+				"effects").toFile();
+		long resultBytes    = 12 + 640 * 480 * 4;
+		Picture pic         = Picture.loadPicture("Creek.bmp");
+		Picture picCorrect  = Picture.loadPicture("Creek_blur.bmp");
+		DiskEffectCache disk = new DiskEffectCache(directory,
+				2 * resultBytes);
+		assertTrue(picCorrect.equals(
+				disk.apply(pic, "blur", p -> p.blur(3), 3)));
+		assertTrue(disk.getMisses() == 1 && disk.getBytes() == resultBytes);
+
+		disk                = new DiskEffectCache(directory, 2 * resultBytes);
+		EffectCache cache   = new EffectCache(0, disk);
+		assertTrue(picCorrect.equals(cache.blur(pic, 3)));
+		assertTrue(disk.getHits() == 1 && disk.getMisses() == 0);
+		assertTrue(pic.negate().equals(cache.negate(pic)));
+		assertTrue(pic.showEdges(20).equals(cache.showEdges(pic, 20)));
+		assertTrue(disk.getEvictions() == 1);
+		assertTrue(disk.getBytes() == 2 * resultBytes);
+		assertTrue(directory.list().length == 2);
+
+		disk.clear();
+		assertTrue(directory.delete());
+	}
+	/*
+	 * Validate that the effects of a Picture go through the EffectCache
+	 * set with setEffectCache, and run again once the pixels change.
+	 */
+	public void testPictureEffectCache()
+	{
+		Picture pic         = Picture.loadPicture("Creek.bmp");
+		Picture picCorrect  = Picture.loadPicture("Creek_blur.bmp");
+		Picture edges       = pic.showEdges(20);
+		EffectCache cache   = new EffectCache(4 * 640 * 480 * 4);
+		Picture.setEffectCache(cache);
+		try {
+			assertTrue(picCorrect.equals(pic.blur(3)));
+			assertTrue(picCorrect.equals(new Picture(pic).blur(3)));
+			assertTrue(edges.equals(pic.showEdges(20)));
+			assertTrue(pic.showEdges(20).getFileName().equals(pic.getFileName()));
+			assertTrue(cache.getHits() == 2 && cache.getMisses() == 2);
+
+			String digest   = pic.digest();
+			pic.setBasicPixel(0, 0, pic.getBasicPixel(0, 0) ^ 1);
+			assertFalse(pic.digest().equals(digest));
+			pic.blur(3);
+			assertTrue(cache.getMisses() == 3);
+		} finally {
+			Picture.setEffectCache(null);
+		}
+	}
+	/*
+	 * Validate that the result of an effect does not keep the hash code of
+	 * the picture it was made from, so that cached effects can be chained.
+	 */
+	public void testCachedEffectChain()
+	{
+		Picture pic         = Picture.loadPicture("Creek.bmp");
+		long hash           = pic.contentHash();
+		Picture edges       = pic.showEdges(20);
+		Picture blurred     = pic.blur(3);
+		assertFalse(edges.contentHash() == hash);
+		assertFalse(blurred.contentHash() == hash);
+		assertTrue(edges.hashCode() == new Picture((SimplePicture) edges).hashCode());
+		assertTrue(blurred.hashCode() == new Picture((SimplePicture) blurred).hashCode());
+
+		EffectCache cache   = new EffectCache(4 * 640 * 480 * 4);
+		Picture picTest     = cache.showEdges(cache.showEdges(pic, 20), 20);
+		assertTrue(edges.showEdges(20).equals(picTest));
+		assertFalse(edges.equals(picTest));
+		picTest             = cache.blur(cache.blur(pic, 3), 3);
+		assertTrue(blurred.blur(3).equals(picTest));
+		assertTrue(cache.getHits() == 0 && cache.getMisses() == 4);
+	}
+	/*
+	 * Validate that writes through a BufferedImage or Graphics handed out
+	 * by a Picture change its hash code, so caches never miss them.
+	 */
+	public void testWritableViews()
+	{
+		Picture pic         = Picture.loadPicture("Creek.bmp");
+		EffectCache cache   = new EffectCache(4 * 640 * 480 * 4);
+		long hash           = pic.contentHash();
+		cache.negate(pic);
+		pic.getBufferedImage().setRGB(0, 0, 0xff123456);
+		assertFalse(pic.contentHash() == hash);
+		assertTrue(pic.negate().equals(cache.negate(pic)));
+
+		hash                = pic.contentHash();
+		java.awt.Graphics2D graphics = pic.createGraphics();
+		assertTrue(pic.contentHash() == hash);
+		graphics.setColor(Color.red);
+		graphics.fillRect(10, 10, 5, 5);
+		graphics.dispose();
+		assertFalse(pic.contentHash() == hash);
+		assertTrue(pic.negate().equals(cache.negate(pic)));
+		assertTrue(cache.getHits() == 0);
+	}
+	/*
+	 * Validate that EffectCache runs an effect once for equal pictures and
+	 * parameters, hands out copies, and drops the least recent results.
+	 */
+	public void testEffectCache()
+	{
+		Picture pic         = Picture.loadPicture("Creek.bmp");
+		Picture picCorrect  = Picture.loadPicture("Creek_blur.bmp");
+		EffectCache cache   = new EffectCache(2 * 640 * 480 * 4);
+		Picture picTest     = cache.blur(pic, 3);
+		assertTrue(picCorrect.equals(picTest));
+		picTest.setBasicPixel(0, 0, 0);
+		picTest             = cache.blur(new Picture(pic), 3);
+		assertTrue(picCorrect.equals(picTest));
+		assertTrue(cache.getHits() == 1 && cache.getMisses() == 1);
+
+		assertTrue(pic.negate().equals(cache.negate(pic)));
+		assertTrue(cache.getBytes() == 2 * 640 * 480 * 4);
+		cache.blur(pic, 3);
+		assertTrue(pic.lighten(10).equals(cache.lighten(pic, 10)));
+		assertTrue(cache.getEvictions() == 1 && cache.size() == 2);
+		cache.negate(pic);
+		assertTrue(cache.getMisses() == 4);
+		assertTrue(cache.getHits() == 2);
+	}
+	/*
+	 * Validate that equal Pictures, however their pixels are held, have
+	 * equal hash codes and digests, and that a write changes them.
+	 */
+	public void testContentHash()
+	{
+		Picture pic         = Picture.loadPicture("Creek.bmp");
+		Picture picCopy     = new Picture(pic);
+		Picture offHeap     = new Picture(pic);
+		offHeap.moveOffHeap();
+		assertTrue(pic.equals(picCopy) && pic.equals(offHeap));
+		assertTrue(pic.hashCode() == picCopy.hashCode());
+		assertTrue(pic.contentHash() == offHeap.contentHash());
+		assertTrue(pic.digest().equals(offHeap.digest()));
+		assertTrue(pic.digest().length() == 64);
+
+		picCopy.setBasicPixel(639, 479, picCopy.getBasicPixel(639, 479) ^ 1);
+		assertFalse(pic.equals(picCopy));
+		assertFalse(picCopy.equals(pic));
+		assertFalse(pic.contentHash() == picCopy.contentHash());
+		assertFalse(pic.digest().equals(picCopy.digest()));
+		offHeap.close();
+
+		java.util.Set<Picture> set = new java.util.HashSet<Picture>();
+		set.add(pic);
+		assertTrue(set.contains(pic.negate().negate()));
+		assertFalse(set.contains(pic.negate()));
+		assertFalse(new Picture(2, 3).equals(new Picture(3, 2)));
+		assertTrue(new PixelHash().getValue() == 0xef46db3751d8e999L);
+	}
+	/*
+	 * Validate that the standard GlyphSet holds the pixels of the BMP
+	 * files, and that another set can be drawn with instead.
+	 */
+	public void testGlyphSet()
+	{
+		GlyphSet glyphs     = GlyphSet.getStandard();
+		assertTrue(glyphs.size() == 13);
+		assertTrue(glyphs.getGlyph(0).equals(Picture.loadPicture("hash.bmp")));
+		assertTrue(glyphs.getGlyph(12).equals(
+				Picture.loadPicture("space.bmp")));
+		assertTrue(GlyphSet.getDefault() == glyphs);
+
+		Picture dark        = new Picture(2, 2);
+		dark.setAllPixelsToAColor(Color.black);
+		GlyphSet blocks     = new GlyphSet("#.", dark, new Picture(2, 2));
+		assertTrue(blocks.level(127) == 0 && blocks.level(128) == 1);
+		Picture pic         = Picture.loadPicture("Gray.bmp");
+		GlyphSet.setDefault(blocks);
+		try {
+			assertTrue(pic.asciiLines().size() == pic.getHeight() / 2);
+			assertTrue(pic.convertToAscii().equals(
+					new AsciiRenderer(BandExecutor.SERIAL, blocks).render(pic)));
+			assertTrue(Picture.getAsciiPic(255).getBasicPixel(1, 1) ==
+					Color.white.getRGB());
+		} finally {
+			GlyphSet.setDefault(null);
+		}
+		try {
+			new GlyphSet("#", new Picture(2, 2), new Picture(2, 2));
+			fail();
+		} catch (IllegalArgumentException ex) { }
+	}
+	/*
+	 * Validate that asciiText and asciiLines give one character for every
+	 * chunk, one line for every band, with the levels of convertToAscii.
+	 */
+	public void testAsciiText() throws java.io.IOException
+	{
+		Picture pic         = new Picture(130, 25);
+		for (int x = 0; x < 130; x++) {
+			int gray = (x / 10) * 19;
+			for (int y = 0; y < 25; y++)
+				pic.setBasicPixel(x, y, new Color(gray, gray, gray).getRGB());
+		}
+		java.util.List<String> lines = pic.asciiLines();
+		assertTrue(lines.size() == 2);
+		String characters   = GlyphSet.getStandard().getCharacters();
+		assertTrue(lines.get(0).equals(characters));
+		assertTrue(lines.get(1).equals(characters));
+		StringBuilder text  = new StringBuilder();
+		pic.asciiText(text);
+		assertTrue(text.toString().equals(lines.get(0) + "\n" +
+				lines.get(1) + "\n"));
+
+		pic                 = Picture.loadPicture("mickey.bmp");
+		lines               = pic.asciiLines();
+		assertTrue(lines.size() == 20);
+		assertTrue(lines.get(0).length() == 35);
+	}
+	/*
+	 * Validate that AsciiRenderer draws the same ASCII art as
+	 * convertToAscii, serially, in parallel, and in place.
+	 */
+	public void testAsciiRenderer()
+	{
+		Picture pic         = Picture.loadPicture("mickey.bmp");
+		Picture picCopy     = new Picture(pic);
+		Picture picCorrect  = Picture.loadPicture("mickey_ascii.bmp");
+		assertTrue(picCorrect.equals(
+				new AsciiRenderer(BandExecutor.SERIAL).render(pic)));
+		assertTrue(picCorrect.equals(new AsciiRenderer().render(pic)));
+		assertTrue(pic.equals(picCopy));
+		new AsciiRenderer().render(picCopy, picCopy);
+		assertTrue(picCorrect.equals(picCopy));
+		GlyphSet glyphs     = GlyphSet.getStandard();
+		assertTrue(glyphs.level(0) == 0);
+		assertTrue(glyphs.level(227) == 11);
+		assertTrue(glyphs.level(255) == glyphs.size() - 1);
+	}
+	/*
+	 * Validate that the in-place effects leave a picture with the same
+	 * pixels as the effects that make a new one.
+	 */
+	public void testInPlaceEffects()
+	{
+		Picture pic         = Picture.loadPicture("Creek.bmp");
+		Picture picTest     = new Picture(pic);
+		assertTrue(picTest.inPlace().grayscale().lighten(20).getPicture()
+				== picTest);
+		assertTrue(pic.grayscale().lighten(20).equals(picTest));
+		assertTrue(Picture.loadPicture("Creek_blur.bmp").equals(
+				new Picture(pic).inPlace().blur(3).getPicture()));
+		assertTrue(pic.blur(40).equals(
+				new Picture(pic).inPlace().blur(40).getPicture()));
+
+		Picture colleen     = Picture.loadPicture("Colleen.bmp");
+		Picture bg          = Picture.loadPicture("Creek.bmp");
+		assertTrue(Picture.loadPicture("Colleen_chromaKey.bmp").equals(
+				new Picture(colleen).inPlace().chromaKey(118, 54, bg, 30)
+				.getPicture()));
+		assertTrue(Picture.loadPicture("Colleen_paintBucket.bmp").equals(
+				new Picture(colleen).inPlace().paintBucket(118, 54, 30,
+				new Color(0, 255, 0)).getPicture()));
+		assertTrue(Picture.loadPicture("Colleen_showEdges.bmp").equals(
+				new Picture(colleen).inPlace().showEdges(20).getPicture()));
+		assertTrue(Picture.loadPicture("mickey_ascii.bmp").equals(
+				new Picture(Picture.loadPicture("mickey.bmp")).inPlace()
+				.convertToAscii().getPicture()));
+
+		Picture cal         = Picture.loadPicture("CalOriginal.bmp");
+		Picture square      = new Picture(cal.getHeight(), cal.getHeight());
+		for (int x = 0; x < square.getWidth(); x++)
+			for (int y = 0; y < square.getHeight(); y++)
+				square.setBasicPixel(x, y, cal.getBasicPixel(x, y));
+		for (int rotations = 0; rotations < 4; rotations++) {
+			assertTrue(cal.rotate(rotations).equals(new Picture(cal)
+					.inPlace().rotate(rotations).getPicture()));
+			assertTrue(square.rotate(rotations).equals(new Picture(square)
+					.inPlace().rotate(rotations).getPicture()));
+		}
+		for (int axis = Picture.HORIZONTAL;
+				axis <= Picture.BACKWARD_DIAGONAL; axis++) {
+			assertTrue(cal.flip(axis).equals(new Picture(cal).inPlace()
+					.flip(axis).getPicture()));
+			assertTrue(square.flip(axis).equals(new Picture(square)
+					.inPlace().flip(axis).getPicture()));
+		}
+
+		picTest             = new Picture(pic);
+		picTest.moveOffHeap();
+		assertTrue(pic.blur(3).equals(picTest.inPlace().blur(3)
+				.getPicture()));
+		picTest.close();
+	}
+	/*
+	 * Validate that the effects of PlanarPicture give the same pixels as
+	 * those of Picture.
+	 */
+	public void testPlanarPicture()
+	{
+		Picture pic         = Picture.loadPicture("Creek.bmp");
+		PlanarPicture planar = new PlanarPicture(pic);
+		assertTrue(pic.equals(planar.toPicture()));
+		assertTrue(planar.getBasicPixel(8, 3) == pic.getBasicPixel(8, 3));
+		assertTrue(Picture.loadPicture("Creek_grayscale.bmp").equals(
+				planar.grayscale().toPicture()));
+		assertTrue(Picture.loadPicture("Creek_negate.bmp").equals(
+				planar.negate().toPicture()));
+		assertTrue(Picture.loadPicture("Creek_blur.bmp").equals(
+				planar.blur(3).toPicture()));
+		assertTrue(pic.blur(40).equals(planar.blur(40).toPicture()));
+
+		// A square over the whole of 9 million white pixels sums past an int.
+		planar              = new PlanarPicture(9000, 1000);
+		for (int channel = 0; channel < 4; channel++)
+			java.util.Arrays.fill(planar.getPlane(channel), (byte) 0xff);
+		PlanarPicture planarTest = planar.blur(9000);
+		assertTrue(planarTest.getBasicPixel(0, 0) == 0xffffffff);
+		assertTrue(planarTest.getBasicPixel(4500, 500) == 0xffffffff);
+
+		Picture gray        = Picture.loadPicture("Gray.bmp");
+		planar              = new PlanarPicture(gray);
+		assertTrue(Picture.loadPicture("Gray_darker.bmp").equals(
+				planar.darken(30).toPicture()));
+		assertTrue(Picture.loadPicture("Gray_lighter.bmp").equals(
+				planar.lighten(30).toPicture()));
+		assertTrue(gray.addRed(300).addGreen(-70).addBlue(25).equals(
+				planar.addRed(300).addGreen(-70).addBlue(25).toPicture()));
+	}
+	/*
+	 * Validate that the default PlaneKernels, which use the Vector API
+	 * when it is available, give the same values as the scalar ones.
+	 */
+	public void testPlaneKernels()
+	{
+		PlaneKernels scalar = PlaneKernels.SCALAR;
+		PlaneKernels kernels = PlaneKernels.getDefault();
+		java.util.Random random = new java.util.Random(17);
+		byte[][] planes     = new byte[3][1000];
+		for (byte[] plane : planes)
+			random.nextBytes(plane);
+		byte[][] expected   = new byte[3][1000];
+		byte[][] actual     = new byte[3][1000];
+
+		scalar.grayscale(planes[0], planes[1], planes[2], expected[0],
+				expected[1], expected[2], 3, 997);
+		kernels.grayscale(planes[0], planes[1], planes[2], actual[0],
+				actual[1], actual[2], 3, 997);
+		assertTrue(java.util.Arrays.deepEquals(expected, actual));
+		scalar.negate(planes[0], expected[0], 1, 999);
+		kernels.negate(planes[0], actual[0], 1, 999);
+		assertTrue(java.util.Arrays.equals(expected[0], actual[0]));
+		for (int amount = -255; amount <= 255; amount += 3) {
+			scalar.shift(planes[1], expected[1], amount, 0, 1000);
+			kernels.shift(planes[1], actual[1], amount, 0, 1000);
+			assertTrue(java.util.Arrays.equals(expected[1], actual[1]));
+		}
+	}
+	/*
+	 * Validate that effects reading a Picture kept off the heap, or a copy
+	 * sharing tiles, give the same pixels and leave its storage as it is.
+	 */
+	public void testReadsKeepStorage()
+	{
+		Picture pic         = new Picture(150, 97);
+		java.util.Random random = new java.util.Random(5);
+		for (int y = 0; y < pic.getHeight(); y++)
+			for (int x = 0; x < pic.getWidth(); x++)
+				pic.setBasicPixel(x, y, random.nextInt(4) * 0x3f3f3f3f);
+		Picture offHeap     = new Picture(pic);
+		offHeap.moveOffHeap();
+		Picture tiled       = new Picture(pic);
+		Picture background  = Picture.loadPicture("Creek.bmp");
+
+		for (Picture picTest : new Picture[] { offHeap, tiled }) {
+			assertTrue(pic.blur(2).equals(picTest.blur(2)));
+			assertTrue(pic.showEdges(30).equals(picTest.showEdges(30)));
+			assertTrue(pic.chromaKey(4, 4, background, 40).equals(
+					picTest.chromaKey(4, 4, background, 40)));
+			assertTrue(pic.paintBucket(4, 4, 40, Color.blue).equals(
+					picTest.paintBucket(4, 4, 40, Color.blue)));
+			for (int rotations = 1; rotations < 4; rotations++)
+				assertTrue(pic.rotate(rotations).equals(
+						picTest.rotate(rotations)));
+			for (int axis = 1; axis <= 4; axis++)
+				assertTrue(pic.flip(axis).equals(picTest.flip(axis)));
+			long[] sums     = new long[2];
+			pic.forEachPixel((x, y, value) -> sums[0] += value);
+			picTest.forEachPixel((x, y, value) -> sums[1] += value);
+			assertTrue(sums[0] == sums[1]);
+			Picture copy    = new Picture(40, 30);
+			copy.copyPicture(picTest);
+			assertTrue(copy.getBasicPixel(39, 29) == pic.getBasicPixel(39, 29));
+			PixelCursor cursor = new PixelCursor(picTest).moveTo(7, 9);
+			assertTrue(cursor.getARGB() == pic.getBasicPixel(7, 9));
+			cursor.setRGB(0x123456);
+			assertTrue(picTest.getBasicPixel(7, 9) ==
+					((pic.getBasicPixel(7, 9) & 0xff000000) | 0x123456));
+			assertTrue(pic.getBasicPixel(7, 9) != picTest.getBasicPixel(7, 9));
+		}
+		assertTrue(offHeap.isOffHeap());
+		assertTrue(tiled.getFlatRaster() == null);
+		offHeap.close();
+	}
+	/*
+	 * Validate that a Picture kept off the heap gives the same pixels and
+	 * point operations as one on the heap, and stays off the heap until
+	 * its raster is asked for.
+	 */
+	public void testOffHeap() throws java.io.IOException
+	{
+		Picture pic         = Picture.loadPicture("Creek.bmp");
+		Picture offHeap     = new Picture(pic);
+		offHeap.moveOffHeap();
+		assertTrue(offHeap.isOffHeap());
+		assertTrue(pic.equals(offHeap));
+
+		Picture gray        = offHeap.grayscale();
+		assertTrue(gray.isOffHeap());
+		assertTrue(pic.grayscale().equals(gray));
+		assertTrue(pic.pointOps().lighten(30).negate().materialize().equals(
+				offHeap.pointOps().lighten(30).negate().materialize()));
+		assertTrue(offHeap.getBufferedImage().getRGB(9, 4) ==
+				pic.getBasicPixel(9, 4));
+
+		java.awt.Graphics2D graphics = offHeap.createGraphics();
+		graphics.setColor(Color.red);
+		graphics.fillRect(0, 0, 2, 2);
+		graphics.dispose();
+		assertTrue(offHeap.isOffHeap());
+		assertTrue(offHeap.getBasicPixel(1, 1) == Color.red.getRGB());
+
+		java.io.File file   = java.io.File.createTempFile("Creek", ".bmp");
+		try {
+			offHeap.writeOrFail(file.getPath());
+			assertTrue(offHeap.equals(new Picture(file.getPath())));
+		} finally {
+			file.delete();
+		}
+		assertTrue(offHeap.getRaster()[offHeap.rasterIndex(1, 1)] ==
+				Color.red.getRGB());
+		assertTrue(!offHeap.isOffHeap());
+		gray.close();
+
+		// Pictures that are not copies hold a BufferedImage of their own.
+		Picture loaded      = Picture.loadPicture("Creek.bmp");
+		loaded.moveOffHeap();
+		assertTrue(loaded.isOffHeap() && loaded.getWidth() == 640);
+		assertTrue(pic.equals(loaded));
+		Picture blank       = new Picture(10, 10);
+		blank.moveOffHeap();
+		assertTrue(blank.isOffHeap() && blank.getHeight() == 10);
+		loaded.close();
+		blank.close();
+	}
+	/*
+	 * Validate that a MappedPicture holds the pixels of the image it was
+	 * imported from, and that effects run in strips give the same result
+	 * as on the whole Picture.
+	 */
+	public void testMappedPicture() throws java.io.IOException
+	{
+		Picture pic         = Picture.loadPicture("Creek.bmp");
+		java.io.File file   = java.io.File.createTempFile("Creek", ".picm");
+		java.io.File blurred = java.io.File.createTempFile("Creek_blur", ".picm");
+		try {
+			MappedPicture mapped = MappedPicture.importImage("Creek.bmp", file);
+			assertTrue(pic.equals(mapped.readRegion(0, 0, pic.getWidth(),
+					pic.getHeight())));
+			assertTrue(mapped.getBasicPixel(70, 65) == pic.getBasicPixel(70, 65));
+
+			MappedPicture target = MappedPicture.create(blurred,
+					pic.getWidth(), pic.getHeight());
+			mapped.applyInStrips(target, 3, 10, p -> p.blur(3));
+			assertTrue(pic.blur(3).equals(target.readRegion(0, 0,
+					pic.getWidth(), pic.getHeight())));
+			mapped.applyInStrips(mapped, 0, p -> p.grayscale());
+			int[] row = mapped.getRow(5, new int[pic.getWidth()]);
+			assertTrue(row[7] == pic.grayscale().getBasicPixel(7, 5));
+
+			mapped.setBasicPixel(66, 1, 0xff123456);
+			mapped.close();
+			target.close();
+			mapped = MappedPicture.open(file);
+			assertTrue(mapped.getBasicPixel(66, 1) == 0xff123456);
+			mapped.close();
+		} finally {
+			file.delete();
+			blurred.delete();
+		}
+	}
+	/*
+	 * Validate that copies, which share their pixels until written, never
+	 * see the writes made to each other.
+	 */
+	public void testCopyOnWrite()
+	{
+		Picture pic         = Picture.loadPicture("Creek.bmp");
+		int original        = pic.getBasicPixel(2, 2);
+		PixelCursor cursor  = new PixelCursor(pic).moveTo(3, 3);
+		Picture copy        = new Picture(pic);
+		copy.setBasicPixel(0, 0, 0xff123456);
+		assertTrue(pic.getBasicPixel(0, 0) != 0xff123456);
+
+		pic.setBasicPixel(1, 1, 0xff654321);
+		cursor.setARGB(0xff111111);
+		assertTrue(copy.getBasicPixel(1, 1) != 0xff654321);
+		assertTrue(copy.getBasicPixel(3, 3) != 0xff111111);
+		assertTrue(pic.getBasicPixel(3, 3) == 0xff111111);
+
+		Picture copyOfCopy  = new Picture(copy);
+		copy.setBasicPixel(2, 2, 0xffabcdef);
+		assertTrue(copyOfCopy.getBasicPixel(0, 0) == 0xff123456);
+		assertTrue(copyOfCopy.getBasicPixel(2, 2) == original);
+		int[] row           = copyOfCopy.getRow(2, new int[pic.getWidth()]);
+		assertTrue(row[2] == original);
+		assertTrue(copy.getRaster()[copy.rasterIndex(2, 2)] == 0xffabcdef);
+		assertTrue(copyOfCopy.getRaster()[copyOfCopy.rasterIndex(0, 0)] ==
+				0xff123456);
+	}
+	/*
+	 * Validate that every chain of rotations and flips on an
+	 * OrientedPicture gives the same Picture as the chain on the Picture.
+	 */
+	public void testOrientedPicture()
+	{
+		Picture pic         = Picture.loadPicture("CalOriginal.bmp");
+		Picture picCorrect  = Picture.loadPicture("CalRotate1.bmp");
+		OrientedPicture view = pic.oriented().rotate(1);
+		assertTrue(picCorrect.equals(view.materialize()));
+		assertTrue(view.getPixel(17, 5).getColor().equals(
+				picCorrect.getPixel(17, 5).getColor()));
+
+		for (int first = 0; first < 4; first++)
+			for (int axis = 1; axis <= 4; axis++) {
+				view = pic.oriented().rotate(first).flip(axis).rotate(3);
+				Picture direct = pic.rotate(first).flip(axis).rotate(3);
+				assertTrue(view.getWidth() == direct.getWidth());
+				assertTrue(view.getBasicPixel(3, 8) == direct.getBasicPixel(3, 8));
+				assertTrue(direct.equals(view.materialize()));
+			}
+		assertTrue(pic.oriented().rotate(2).rotate(2).isIdentity());
+		assertTrue(pic.oriented().flip(Picture.FORWARD_DIAGONAL)
+				.flip(Picture.FORWARD_DIAGONAL).isIdentity());
+	}
+	/*
+	 * Validate rotations and diagonal flips of a Picture that does not
+	 * split evenly into RasterTransform tiles.
+	 */
+	public void testTiledTransforms()
+	{
+		Picture pic         = new Picture(150, 97);
+		java.util.Random random = new java.util.Random(11);
+		for (int y = 0; y < pic.getHeight(); y++)
+			for (int x = 0; x < pic.getWidth(); x++)
+				pic.setBasicPixel(x, y, random.nextInt());
+		Picture right       = pic.rotate(1);
+		Picture left        = pic.rotate(3);
+		Picture forward     = pic.flip(Picture.FORWARD_DIAGONAL);
+		Picture backward    = pic.flip(Picture.BACKWARD_DIAGONAL);
+		int h               = pic.getHeight();
+		int w               = pic.getWidth();
+		for (int y = 0; y < w; y++)
+			for (int x = 0; x < h; x++) {
+				assertTrue(right.getBasicPixel(x, y) == pic.getBasicPixel(y, h - 1 - x));
+				assertTrue(left.getBasicPixel(x, y) == pic.getBasicPixel(w - 1 - y, x));
+				assertTrue(forward.getBasicPixel(x, y) ==
+						pic.getBasicPixel(w - 1 - y, h - 1 - x));
+				assertTrue(backward.getBasicPixel(x, y) == pic.getBasicPixel(y, x));
+			}
+	}
+	/*
+	 * Validate that ColorThreshold makes the same decisions as the
+	 * truncated color distance, for every threshold that matters.
+	 */
+	public void testColorThreshold()
+	{
+		java.util.Random random = new java.util.Random(61);
+		int[] colors = new int[400];
+		for (int i = 0; i < colors.length; i++)
+			colors[i] = random.nextInt();
+		colors[0] = 0xff000000;
+		colors[1] = 0xffffffff;
+		// A distance of exactly 30 sits right on a threshold.
+		colors[2] = 0xff000000;
+		colors[3] = 0xff1e0000;
+
+		for (int threshold = -2; threshold <= 445; threshold++) {
+			ColorThreshold limit = new ColorThreshold(threshold);
+			for (int i = 0; i < colors.length; i += 2) {
+				int distance = (int) Pixel.colorDistance(colors[i], colors[i + 1]);
+				assertTrue(limit.isWithin(colors[i], colors[i + 1]) ==
+						(distance < threshold));
+				assertTrue(limit.isBeyond(colors[i], colors[i + 1]) ==
+						(distance > threshold));
+			}
+		}
+		assertTrue(ColorThreshold.squaredDistance(colors[0], colors[1]) ==
+				ColorThreshold.MAX_SQUARED_DISTANCE);
+	}
+	/*
+	 * Validate that paintBucket fills a large region only up to a wall,
+	 * and still reaches pixels that only touch diagonally.
+	 */
+	public void testPaintBucketRegions()
+	{
+		Picture pic         = new Picture(500, 500);
+		for (int y = 0; y < 500; y++)
+			pic.setBasicPixel(250, y, Color.black.getRGB());
+		Picture picTest     = pic.paintBucket(10, 10, 30, Color.red);
+		assertTrue(picTest.getBasicPixel(249, 499) == Color.red.getRGB());
+		assertTrue(picTest.getBasicPixel(250, 0) == Color.black.getRGB());
+		assertTrue(picTest.getBasicPixel(251, 0) == Color.white.getRGB());
+
+		Picture checker     = new Picture(2, 2);
+		checker.setBasicPixel(1, 0, Color.black.getRGB());
+		checker.setBasicPixel(0, 1, Color.black.getRGB());
+		picTest             = checker.paintBucket(0, 0, 30, Color.red);
+		assertTrue(picTest.getBasicPixel(1, 1) == Color.red.getRGB());
+		assertTrue(picTest.getBasicPixel(1, 0) == Color.black.getRGB());
+	}
+	/*
+	 * Validate that IntegralImage sums match sums taken pixel by pixel,
+	 * and that a Picture only keeps its IntegralImage until it changes.
+	 */
+	public void testIntegralImage()
+	{
+		Picture pic         = Picture.loadPicture("Colleen.bmp");
+		IntegralImage sums  = pic.getIntegralImage(true);
+		long blue           = 0;
+		long blueSquares    = 0;
+		for (int y = 30; y < 50; y++)
+			for (int x = 20; x < 30; x++) {
+				int value = pic.getPixel(x, y).getBlue();
+				blue += value;
+				blueSquares += value * value;
+			}
+		assertTrue(sums.count(20, 30, 10, 20) == 200);
+		assertTrue(sums.sum(IntegralImage.BLUE, 20, 30, 10, 20) == blue);
+		assertTrue(sums.sumOfSquares(IntegralImage.BLUE, 20, 30, 10, 20) ==
+				blueSquares);
+		// Only the 5 by 5 corner of this rectangle is inside the picture.
+		assertTrue(sums.count(-5, -5, 10, 10) == 25);
+		assertTrue(sums.count(pic.getWidth(), 0, 10, 10) == 0);
+
+		Picture gray        = Picture.loadPicture("Gray.bmp");
+		IntegralImage flat  = gray.getIntegralImage(true);
+		assertTrue(flat.mean(IntegralImage.RED, 0, 0, 7, 7) ==
+				gray.getPixel(0, 0).getRed());
+		assertTrue(flat.variance(IntegralImage.RED, 0, 0, 7, 7) == 0);
+
+		assertTrue(pic.getIntegralImage() == sums);
+		pic.setBasicPixel(0, 0, 0);
+		assertTrue(pic.getIntegralImage() != sums);
+		assertTrue(pic.getIntegralImage().sum(IntegralImage.RED, 0, 0, 1, 1)
+				== 0);
+	}
+	/*
+	 * Validate that blur works for a square larger than the picture:
+	 * every pixel then becomes the average of the whole picture.
+	 */
+	public void testBlurLargeRadius()
+	{
+		Picture pic         = Picture.loadPicture("Colleen.bmp");
+		Picture picTest     = pic.blur(1000);
+		long red            = 0;
+		for (int y = 0; y < pic.getHeight(); y++)
+			for (int x = 0; x < pic.getWidth(); x++)
+				red += pic.getPixel(x, y).getRed();
+		red /= pic.getWidth() * pic.getHeight();
+		assertTrue(picTest.getPixel(0, 0).getRed() == red);
+		assertTrue(picTest.getBasicPixel(0, 0) ==
+				picTest.getBasicPixel(pic.getWidth() - 1, pic.getHeight() - 1));
+	}
+	/*
+	 * Validate that every effect gives the same result when its rows
+	 * are split into bands and run on several threads.
+	 */
+	public void testParallelBands()
+	{
+		Picture.setDefaultBandExecutor(
+				new BandExecutor(new java.util.concurrent.ForkJoinPool(4)));
+		try {
+			testGrayscale();
+			testNegate();
+			testRotate1();
+			testRotate2();
+			testRotate3();
+			testFlipHorixontal();
+			testFlipVertical();
+			testFlipForwardDiagonal();
+			testFlipBackwardDiagonal();
+			testBlur();
+			testShowEdges();
+			testChromaKey();
+			testColorTranslationsDarker();
+			testColorTranslationsLighter();
+			testColorTranslationsGreener();
+			testColorTranslationsBluer();
+			testColorTranslationsRedder();
+			testConvertToAscii();
+			testShowEdgesMickey();
+		} finally {
+			Picture.setDefaultBandExecutor(BandExecutor.SERIAL);
+		}
+	}
 	/**
 	 * Helper method for loading a picture in the current directory.
 	 */
@@ -80,6 +80,16 @@ public class Pixel
 		return alpha;
 	}
 
+	/**
+	 * @param value A color value.
+	 * 
+	 * @return The alpha component of the provided color value.
+	 */
+	public static int getAlpha(int value) {
+		int alpha = extractEightBits(value, 24);
+		return alpha;
+	}
+
 	/**
 	 * @return The amount of red at this Pixel. The value varies
 	 * 	from 0 for none to 255 for maximum.
@@ -182,9 +192,25 @@ public class Pixel
 		updatePicture(this.getAlpha(), red, green, blue);
 	}
 
+	/**
+	 * Set the Pixel color to the packed color provided, keeping the
+	 * 	alpha of this Pixel. Unlike setColor(Color), this needs no Color
+	 * 	object.
+	 * 
+	 * @param rgb The new color to use, with red, green, and blue each
+	 * 	taking 8 bits from left to right; any alpha bits are ignored.
+	 */
+	public void setColor(int rgb) {
+		int value = picture.getBasicPixel(x, y);
+
+		picture.setBasicPixel(x, y,
+				(value & 0xff000000) | (rgb & 0x00ffffff));
+	}
+
 	/**
 	 * Updates the picture based on the color values provided for
-	 * 	this Pixel.
+	 * 	this Pixel. Each value is first corrected to be within 0 and 255,
+	 * 	so that it cannot spill over into its neighbor.
 	 * 
 	 * @param alpha The alpha (transparency) at this Pixel.
 	 * @param red The red value for the color at this Pixel.
@@ -192,7 +218,8 @@ public class Pixel
 	 * @param blue The blue value for the color at this Pixel.
 	 */
 	public void updatePicture(int alpha, int red, int green, int blue) {
-		int value = (alpha << 24) + (red << 16) + (green << 8) + blue;
+		int value = (correctValue(alpha) << 24) + (correctValue(red) << 16) +
+			(correctValue(green) << 8) + correctValue(blue);
 
 		picture.setBasicPixel(x, y, value);
 	}
@@ -203,7 +230,7 @@ public class Pixel
 	 * @param value The value to correct.
 	 * @return A value between 0 and 255.
 	 */
-	private static int correctValue(int value) {
+	public static int correctValue(int value) {
 		if (value < 0)
 			value = 0;
 		if (value > 255)
@@ -282,6 +309,37 @@ public class Pixel
 		return distance;
 	}
 
+	/**
+	 * Obtains the distance between the color of this Pixel and the
+	 * 	packed color provided, without allocating a Color.
+	 * 
+	 * @param otherRGB The packed color to compare to.
+	 * 
+	 * @return The distance between this pixel's color and the passed color.
+	 */
+	public double colorDistance(int otherRGB) {
+		return colorDistance(picture.getBasicPixel(x, y), otherRGB);
+	}
+
+	/**
+	 * Computes the color distance between two packed colors. Alpha is
+	 * 	ignored, as it is for Color objects.
+	 * 
+	 * @param rgb1 A packed color value.
+	 * @param rgb2 A packed color value.
+	 * 
+	 * @return The distance between the two colors.
+	 */
+	public static double colorDistance(int rgb1, int rgb2) {
+		double redDistance = getRed(rgb1) - getRed(rgb2);
+		double greenDistance = getGreen(rgb1) - getGreen(rgb2);
+		double blueDistance = getBlue(rgb1) - getBlue(rgb2);
+		double distance = Math.sqrt(redDistance * redDistance + 
+				greenDistance * greenDistance +
+				blueDistance * blueDistance);
+		return distance;
+	}
+
 	/**
 	 * Computes the color distances between two Color objects.
 	 * 
@@ -0,0 +1,18 @@
+/**
+ * Interface for code that visits the pixels of a Picture through
+ * 	Picture.forEachPixel. Each pixel is passed as a packed int, with
+ * 	alpha, red, green, and blue each taking 8 bits from left to right.
+ */
+public interface PixelConsumer
+{
+
+	/**
+	 * Receives one pixel.
+	 * 
+	 * @param x The x-coordinate of the pixel.
+	 * @param y The y-coordinate of the pixel.
+	 * @param value The pixel as a packed int.
+	 */
+	public void accept(int x, int y, int value);
+
+} // End of PixelConsumer interface
@@ -0,0 +1,196 @@
+/**
+ * Class that walks over the pixels of a picture without creating a new
+ * 	object for every pixel. Unlike a Pixel, a PixelCursor is not tied to a
+ * 	single location: it is moved to the pixel of interest with moveTo, and
+ * 	then reads and writes that pixel as a packed int, with alpha, red,
+ * 	green, and blue each taking 8 bits from left to right.
+ *
+ * 	A single PixelCursor can be reused for every pixel of a loop, so that
+ * 	the loop allocates nothing.
+ */
+public class PixelCursor
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** The SimplePicture this PixelCursor moves over. */
+	private SimplePicture picture;
+
+	/** The raster of the SimplePicture, as of the last move or write, or
+	 * 	pixel if the pixels are tiled or kept off the heap. */
+	private int[] raster;
+
+	/** The current pixel, as of the last move or write, when the pixels
+	 * 	are tiled or kept off the heap and so are read one at a time. */
+	private final int[] pixel = new int[1];
+
+	/** Index of the current pixel in the raster. */
+	private int index;
+
+	/** x location of the current pixel; (0,0) is top left. */
+	private int x;
+
+	/** y location of the current pixel; (0,0) is top left. */
+	private int y;
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * A constructor that takes the SimplePicture to move over. The
+	 * 	PixelCursor starts at (0, 0).
+	 *
+	 * @param picture The SimplePicture to move over.
+	 */
+	public PixelCursor(SimplePicture picture) {
+		this.picture = picture;
+		moveTo(0, 0);
+	}
+
+	////////////////////////////////// Methods ////////////////////////////////
+
+	/**
+	 * Moves this PixelCursor to the pixel at the location provided.
+	 *
+	 * @param x The x-coordinate of the pixel.
+	 * @param y The y-coordinate of the pixel.
+	 *
+	 * @return This PixelCursor, so that a read can be chained onto the move.
+	 */
+	public PixelCursor moveTo(int x, int y) {
+		if (x < 0 || y < 0 || x >= picture.getWidth() ||
+				y >= picture.getHeight())
+			throw new ArrayIndexOutOfBoundsException(
+					"Coordinate out of bounds!");
+
+		this.x = x;
+		this.y = y;
+		raster = picture.getFlatRaster();
+		if (raster != null) {
+			index = picture.rasterIndex(x, y);
+		} else {
+			// The pixels are left where they are.
+			pixel[0] = picture.getBasicPixel(x, y);
+			raster = pixel;
+			index = 0;
+		}
+		return this;
+	}
+
+	/**
+	 * @return The x location of the current pixel.
+	 */
+	public int getX() { return x; }
+
+	/**
+	 * @return The y location of the current pixel.
+	 */
+	public int getY() { return y; }
+
+	/**
+	 * @return The current pixel as a packed int, with alpha, red, green,
+	 * 	and blue each taking 8 bits from left to right.
+	 */
+	public int getARGB() { return raster[index]; }
+
+	/**
+	 * Sets the current pixel to the packed int provided.
+	 *
+	 * @param argb The new value of the pixel (alpha, red, green, blue).
+	 */
+	public void setARGB(int argb) {
+		write(argb);
+	}
+
+	/**
+	 * Sets the red, green, and blue values of the current pixel to those
+	 * 	of the packed int provided, keeping the alpha of the pixel.
+	 *
+	 * @param rgb The new color of the pixel; its alpha is ignored.
+	 */
+	public void setRGB(int rgb) {
+		write((raster[index] & 0xff000000) | (rgb & 0x00ffffff));
+	}
+
+	/**
+	 * Sets the current pixel from the color values provided. As with
+	 * 	Pixel.updatePicture, each value is first corrected to be within
+	 * 	0 and 255.
+	 *
+	 * @param alpha The alpha (transparency) of the pixel.
+	 * @param red The red value of the pixel.
+	 * @param green The green value of the pixel.
+	 * @param blue The blue value of the pixel.
+	 */
+	public void updatePicture(int alpha, int red, int green, int blue) {
+		write((Pixel.correctValue(alpha) << 24) +
+			(Pixel.correctValue(red) << 16) +
+			(Pixel.correctValue(green) << 8) + Pixel.correctValue(blue));
+	}
+
+	/**
+	 * Sets the current pixel. Tiled pixels, or pixels kept off the heap,
+	 * 	are written where they are.
+	 *
+	 * @param argb The new value of the pixel (alpha, red, green, blue).
+	 */
+	private void write(int argb) {
+		if (raster == pixel) {
+			picture.setBasicPixel(x, y, argb);
+			pixel[0] = argb;
+			return;
+		}
+		raster = picture.getRaster();
+		raster[index] = argb;
+		picture.pixelsChanged();
+	}
+
+	/**
+	 * @return The amount of alpha (transparency) at the current pixel.
+	 */
+	public int getAlpha() { return Pixel.getAlpha(raster[index]); }
+
+	/**
+	 * @return The amount of red at the current pixel.
+	 */
+	public int getRed() { return Pixel.getRed(raster[index]); }
+
+	/**
+	 * @return The amount of green at the current pixel.
+	 */
+	public int getGreen() { return Pixel.getGreen(raster[index]); }
+
+	/**
+	 * @return The amount of blue at the current pixel.
+	 */
+	public int getBlue() { return Pixel.getBlue(raster[index]); }
+
+	/**
+	 * @return The average of the red, green, and blue values of the
+	 * 	current pixel.
+	 */
+	public int getAverage() {
+		int value = raster[index];
+		return (Pixel.getRed(value) + Pixel.getGreen(value) +
+				Pixel.getBlue(value)) / 3;
+	}
+
+	/**
+	 * @param otherRGB The packed color to compare to.
+	 *
+	 * @return The distance between the color of the current pixel and
+	 * 	the color provided.
+	 */
+	public double colorDistance(int otherRGB) {
+		return Pixel.colorDistance(raster[index], otherRGB);
+	}
+
+	/**
+	 * @return A String with information about the current pixel.
+	 */
+	public String toString() {
+		return "PixelCursor at (" + x + ", " + y + ") has color " +
+		"components red=" + getRed() + " green=" + getGreen() +
+		" blue=" + getBlue();
+	}
+
+} // End of PixelCursor class
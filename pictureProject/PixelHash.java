@@ -0,0 +1,216 @@
+/**
+ * Class that computes the xxHash64 of a run of packed pixels, fed in any
+ * 	number of pieces, such as the rows of a picture. Each int is hashed as
+ * 	its 4 bytes, least significant first, so the value is that of the
+ * 	64-bit xxHash of those bytes, and is the same on every machine and in
+ * 	every run.
+ *
+ * 	xxHash64 keeps four 64-bit sums, each taking one 8-byte lane of every
+ * 	32 bytes, so it runs at close to the speed memory can be read at. It is
+ * 	not a cryptographic hash; for that, see Picture.digest.
+ */
+public class PixelHash
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** The primes of xxHash64. */
+	private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+	private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long PRIME_3 = 0x165667B19E3779F9L;
+	private static final long PRIME_4 = 0x85EBCA77C2B2AE63L;
+	private static final long PRIME_5 = 0x27D4EB2F165667C5L;
+
+	/** Number of ints in a stripe of 32 bytes. */
+	private static final int STRIPE = 8;
+
+	/** The seed. */
+	private final long seed;
+
+	/** The four sums. */
+	private long v1, v2, v3, v4;
+
+	/** Ints given but not yet hashed, fewer than a stripe. */
+	private final int[] pending = new int[STRIPE];
+
+	/** Number of ints in pending. */
+	private int pendingCount;
+
+	/** Number of bytes given so far. */
+	private long length;
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * A constructor for a hash with seed 0.
+	 */
+	public PixelHash() {
+		this(0);
+	}
+
+	/**
+	 * A constructor that takes the seed.
+	 *
+	 * @param seed The seed.
+	 */
+	public PixelHash(long seed) {
+		this.seed = seed;
+		v1 = seed + PRIME_1 + PRIME_2;
+		v2 = seed + PRIME_2;
+		v3 = seed;
+		v4 = seed - PRIME_1;
+	}
+
+	/////////////////////////////// Methods ///////////////////////////////////
+
+	/**
+	 * @param picture A picture.
+	 *
+	 * @return The hash, with seed 0, of the width, the height, and then the
+	 * 	pixels of the picture, row after row.
+	 */
+	public static long of(SimplePicture picture) {
+		int width = picture.getWidth();
+		PixelHash hash = new PixelHash().update(width)
+			.update(picture.getHeight());
+		int[] raster = picture.getFlatRaster();
+		int[] row = raster == null ? new int[width] : null;
+		for (int y = 0; y < picture.getHeight(); y++) {
+			if (raster != null)
+				hash.update(raster, picture.rasterIndex(0, y), width);
+			else
+				hash.update(picture.getRow(y, row), 0, width);
+		}
+		return hash.getValue();
+	}
+
+	/**
+	 * Adds one int.
+	 *
+	 * @param value The int.
+	 *
+	 * @return This PixelHash.
+	 */
+	public PixelHash update(int value) {
+		return update(new int[] { value }, 0, 1);
+	}
+
+	/**
+	 * Adds a run of ints.
+	 *
+	 * @param values The array holding the ints.
+	 * @param from The index of the first int.
+	 * @param count The number of ints.
+	 *
+	 * @return This PixelHash.
+	 */
+	public PixelHash update(int[] values, int from, int count) {
+		length += 4L * count;
+		if (pendingCount > 0) {
+			int taken = Math.min(STRIPE - pendingCount, count);
+			System.arraycopy(values, from, pending, pendingCount, taken);
+			pendingCount += taken;
+			from += taken;
+			count -= taken;
+			if (pendingCount < STRIPE)
+				return this;
+			stripe(pending, 0);
+			pendingCount = 0;
+		}
+		for (; count >= STRIPE; from += STRIPE, count -= STRIPE)
+			stripe(values, from);
+		System.arraycopy(values, from, pending, 0, count);
+		pendingCount = count;
+		return this;
+	}
+
+	/**
+	 * @return The hash of all the ints given so far. More may be added
+	 * 	afterwards.
+	 */
+	public long getValue() {
+		long hash;
+		if (length >= 4 * STRIPE) {
+			hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) +
+				Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			hash = merge(hash, v1);
+			hash = merge(hash, v2);
+			hash = merge(hash, v3);
+			hash = merge(hash, v4);
+		} else {
+			hash = seed + PRIME_5;
+		}
+		hash += length;
+
+		int index = 0;
+		for (; index + 2 <= pendingCount; index += 2) {
+			hash ^= round(0, lane(pending, index));
+			hash = Long.rotateLeft(hash, 27) * PRIME_1 + PRIME_4;
+		}
+		if (index < pendingCount) {
+			hash ^= (pending[index] & 0xffffffffL) * PRIME_1;
+			hash = Long.rotateLeft(hash, 23) * PRIME_2 + PRIME_3;
+		}
+
+		hash ^= hash >>> 33;
+		hash *= PRIME_2;
+		hash ^= hash >>> 29;
+		hash *= PRIME_3;
+		hash ^= hash >>> 32;
+		return hash;
+	}
+
+	/**
+	 * Adds one stripe of 32 bytes to the four sums.
+	 *
+	 * @param values The array holding the stripe.
+	 * @param from The index of its first int.
+	 */
+	private void stripe(int[] values, int from) {
+		v1 = round(v1, lane(values, from));
+		v2 = round(v2, lane(values, from + 2));
+		v3 = round(v3, lane(values, from + 4));
+		v4 = round(v4, lane(values, from + 6));
+	}
+
+	/**
+	 * @param values An array of ints.
+	 * @param index The index of the first of two ints.
+	 *
+	 * @return The 8 bytes of the two ints, read as a little-endian long.
+	 */
+	private static long lane(int[] values, int index) {
+		return (values[index] & 0xffffffffL) | ((long) values[index + 1] << 32);
+	}
+
+	/**
+	 * @param sum A sum.
+	 * @param lane 8 bytes of input.
+	 *
+	 * @return The sum with the lane added.
+	 */
+	private static long round(long sum, long lane) {
+		sum += lane * PRIME_2;
+		sum = Long.rotateLeft(sum, 31);
+		return sum * PRIME_1;
+	}
+
+	/**
+	 * @param hash The hash so far.
+	 * @param sum One of the four sums.
+	 *
+	 * @return The hash with the sum merged in.
+	 */
+	private static long merge(long hash, long sum) {
+		hash ^= round(0, sum);
+		return hash * PRIME_1 + PRIME_4;
+	}
+
+	/**
+	 * @return A String with the hash so far, in hexadecimal.
+	 */
+	public String toString() {
+		return "PixelHash " + Long.toHexString(getValue());
+	}
+
+} // End of PixelHash class
@@ -0,0 +1,138 @@
+/**
+ * Class that holds the loops PlanarPicture runs its color effects with,
+ * 	over a range of indices of its planes. The loops here are plain Java,
+ * 	written so that the JIT compiler can vectorize them itself.
+ *
+ * 	A faster set, VectorPlaneKernels, is kept in the vector directory and
+ * 	written with the incubating Vector API, which needs the
+ * 	jdk.incubator.vector module both to compile and to run:
+ *
+ * 	javac --add-modules jdk.incubator.vector -cp . -d . vector/VectorPlaneKernels.java
+ * 	java --add-modules jdk.incubator.vector ...
+ *
+ * 	getDefault() hands out that set whenever its class can be loaded and
+ * 	linked, and this one otherwise, so a build or a run without the
+ * 	module simply falls back to these loops. Both give exactly the same
+ * 	values.
+ */
+public class PlaneKernels
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** The loops in plain Java. */
+	public static final PlaneKernels SCALAR = new PlaneKernels();
+
+	/** Name of the class of the Vector API loops. */
+	private static final String VECTOR_CLASS = "VectorPlaneKernels";
+
+	/** The loops getDefault() hands out. */
+	private static final PlaneKernels DEFAULT = loadDefault();
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * A constructor for the loops in plain Java, and for subclasses.
+	 */
+	protected PlaneKernels() { }
+
+	/////////////////////////////// Methods ///////////////////////////////////
+
+	/**
+	 * @return The Vector API loops if they can be used, or SCALAR.
+	 */
+	private static PlaneKernels loadDefault() {
+		if (Boolean.getBoolean("planeKernels.scalar"))
+			return SCALAR;
+		try {
+			PlaneKernels kernels = Class.forName(VECTOR_CLASS)
+					.asSubclass(PlaneKernels.class)
+					.getDeclaredConstructor().newInstance();
+			// Linking errors from a missing module may only show up on the
+			// first call, so make one.
+			kernels.negate(new byte[1], new byte[1], 0, 1);
+			return kernels;
+		} catch (ReflectiveOperationException | LinkageError |
+				RuntimeException ex) {
+			return SCALAR;
+		}
+	}
+
+	/**
+	 * @return The fastest loops that can be used: the Vector API loops if
+	 * 	the class and the jdk.incubator.vector module are there, and
+	 * 	SCALAR otherwise or when the system property planeKernels.scalar
+	 * 	is true.
+	 */
+	public static PlaneKernels getDefault() { return DEFAULT; }
+
+	/**
+	 * @return True, if these loops use the Vector API.
+	 */
+	public boolean isVectorized() { return false; }
+
+	/**
+	 * Sets red, green, and blue to their average, as for Picture.grayscale.
+	 *
+	 * @param red The red plane.
+	 * @param green The green plane.
+	 * @param blue The blue plane.
+	 * @param newRed The red plane to write.
+	 * @param newGreen The green plane to write.
+	 * @param newBlue The blue plane to write.
+	 * @param from The first index to write.
+	 * @param to One past the last index to write.
+	 */
+	public void grayscale(byte[] red, byte[] green, byte[] blue,
+			byte[] newRed, byte[] newGreen, byte[] newBlue, int from, int to) {
+		for (int index = from; index < to; index++) {
+			int sum = (red[index] & 0xff) + (green[index] & 0xff) +
+				(blue[index] & 0xff);
+			// Sums are at most 765, for which this is exactly sum / 3.
+			byte gray = (byte) ((sum * 43691) >>> 17);
+			newRed[index] = gray;
+			newGreen[index] = gray;
+			newBlue[index] = gray;
+		}
+	}
+
+	/**
+	 * Replaces every value by 255 minus itself, as for Picture.negate.
+	 *
+	 * @param plane The plane to read.
+	 * @param newPlane The plane to write.
+	 * @param from The first index to write.
+	 * @param to One past the last index to write.
+	 */
+	public void negate(byte[] plane, byte[] newPlane, int from, int to) {
+		// 255 - v is the same as flipping every bit of v.
+		for (int index = from; index < to; index++)
+			newPlane[index] = (byte) ~plane[index];
+	}
+
+	/**
+	 * Adds an amount to every value, corrected to be within 0 and 255 as
+	 * 	by Pixel.correctValue.
+	 *
+	 * @param plane The plane to read.
+	 * @param newPlane The plane to write.
+	 * @param amount The amount to add, from -255 to 255.
+	 * @param from The first index to write.
+	 * @param to One past the last index to write.
+	 */
+	public void shift(byte[] plane, byte[] newPlane, int amount, int from,
+			int to) {
+		for (int index = from; index < to; index++)
+			newPlane[index] = (byte) Math.min(255,
+					Math.max(0, (plane[index] & 0xff) + amount));
+	}
+
+	/**
+	 * @return A String naming these loops.
+	 */
+	public String toString() {
+		return isVectorized() ? "Vector API plane kernels" :
+			"Scalar plane kernels";
+	}
+
+} // End of PlaneKernels class
@@ -0,0 +1,157 @@
+import java.util.ArrayList;
+
+/**
+ * Class that records a chain of point operations on a Picture and applies
+ * 	them all at once. Chaining the effects of Picture directly, as in
+ * 	picture.lighten(20).addBlue(10).negate(), creates and fills a new
+ * 	Picture for every step. A PointPipeline, obtained from
+ * 	Picture.pointOps(), instead folds the lookup tables of the steps
+ * 	together, and materialize() creates a single new Picture in a single
+ * 	pass:
+ *
+ * 	picture.pointOps().lighten(20).addBlue(10).negate().materialize()
+ *
+ * 	The result is exactly the same as that of the direct chain, including
+ * 	the correcting of every intermediate value to be within 0 and 255.
+ *
+ * 	A PointPipeline is changed by each call that records an operation, and
+ * 	returns itself so that the calls can be chained.
+ */
+public class PointPipeline
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** The Picture the operations are applied to. */
+	private Picture source;
+
+	/**
+	 * The folded operations. A grayscale step after a step that does not
+	 * 	average cannot be folded into it, so it starts a new stage; every
+	 * 	stage after the first therefore averages.
+	 */
+	private ArrayList<ChannelLut> stages = new ArrayList<ChannelLut>();
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * A constructor that takes the Picture to apply the operations to.
+	 *
+	 * @param source The Picture to read from; it is never modified.
+	 */
+	public PointPipeline(Picture source) {
+		this.source = source;
+	}
+
+	////////////////////////////////// Methods ////////////////////////////////
+
+	/**
+	 * Records a point operation described by lookup tables.
+	 *
+	 * @param lut The ChannelLut to apply after the operations so far.
+	 *
+	 * @return This PointPipeline.
+	 */
+	public PointPipeline apply(ChannelLut lut) {
+		int last = stages.size() - 1;
+
+		if (last < 0)
+			stages.add(lut);
+		else if (!lut.isAveraging() || stages.get(last).isAveraging())
+			stages.set(last, stages.get(last).andThen(lut));
+		else
+			stages.add(lut);
+		return this;
+	}
+
+	/**
+	 * Records Picture.grayscale().
+	 *
+	 * @return This PointPipeline.
+	 */
+	public PointPipeline grayscale() {
+		return apply(ChannelLut.grayscale());
+	}
+
+	/**
+	 * Records Picture.negate().
+	 *
+	 * @return This PointPipeline.
+	 */
+	public PointPipeline negate() {
+		return apply(ChannelLut.negate());
+	}
+
+	/**
+	 * Records Picture.lighten(lightenAmount).
+	 *
+	 * @param lightenAmount The amount to add to each color component.
+	 *
+	 * @return This PointPipeline.
+	 */
+	public PointPipeline lighten(int lightenAmount) {
+		return apply(ChannelLut.shift(lightenAmount, lightenAmount,
+				lightenAmount));
+	}
+
+	/**
+	 * Records Picture.darken(darkenAmount).
+	 *
+	 * @param darkenAmount The amount to take from each color component.
+	 *
+	 * @return This PointPipeline.
+	 */
+	public PointPipeline darken(int darkenAmount) {
+		return apply(ChannelLut.shift(-darkenAmount, -darkenAmount,
+				-darkenAmount));
+	}
+
+	/**
+	 * Records Picture.addRed(amount).
+	 *
+	 * @param amount The amount to add to red.
+	 *
+	 * @return This PointPipeline.
+	 */
+	public PointPipeline addRed(int amount) {
+		return apply(ChannelLut.shift(amount, 0, 0));
+	}
+
+	/**
+	 * Records Picture.addGreen(amount).
+	 *
+	 * @param amount The amount to add to green.
+	 *
+	 * @return This PointPipeline.
+	 */
+	public PointPipeline addGreen(int amount) {
+		return apply(ChannelLut.shift(0, amount, 0));
+	}
+
+	/**
+	 * Records Picture.addBlue(amount).
+	 *
+	 * @param amount The amount to add to blue.
+	 *
+	 * @return This PointPipeline.
+	 */
+	public PointPipeline addBlue(int amount) {
+		return apply(ChannelLut.shift(0, 0, amount));
+	}
+
+	/**
+	 * @return The number of lookups made per color component of each
+	 * 	pixel when this PointPipeline is materialized.
+	 */
+	public int getStageCount() { return stages.size(); }
+
+	/**
+	 * Applies every recorded operation to the source Picture.
+	 *
+	 * @return A new Picture holding the result.
+	 */
+	public Picture materialize() {
+		return source.applyLut(stages.toArray(new ChannelLut[0]));
+	}
+
+} // End of PointPipeline class
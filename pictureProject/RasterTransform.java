@@ -0,0 +1,183 @@
+/**
+ * Class that moves the pixels of a picture for rotations and flips. Every
+ * 	rotation by a multiple of 90 degrees and every flip reads each new
+ * 	pixel (x, y) from the old pixel
+ *
+ * 	(originX + x * xStepX + y * yStepX, originY + x * xStepY + y * yStepY)
+ *
+ * 	where every step is -1, 0, or 1. When xStepY is 0, each new row is an
+ * 	old row, perhaps reversed, and rows are copied one after the other.
+ * 	Otherwise each new row is an old column, and walking it steps across a
+ * 	whole row of the old raster for every pixel, missing the cache each
+ * 	time. Those transforms are copied in square tiles instead, so that the
+ * 	part of the old raster a tile reads stays in the cache while the tile
+ * 	is written.
+ */
+public final class RasterTransform
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** Width and height of a tile. 64 by 64 pixels of the old and new
+	 * 	rasters together fit in the first level cache. */
+	public static final int TILE_SIZE = 64;
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * There are no RasterTransform objects; use copy.
+	 */
+	private RasterTransform() { }
+
+	/////////////////////////////// Methods ///////////////////////////////////
+
+	/**
+	 * Fills every pixel of target from source as described above. Tiles, or
+	 * 	rows when no tiles are needed, are split into bands by the
+	 * 	BandExecutor provided.
+	 *
+	 * @param source The SimplePicture to read from.
+	 * @param target The SimplePicture to write to; it must not be source.
+	 * @param originX The old x-coordinate of new pixel (0, 0).
+	 * @param originY The old y-coordinate of new pixel (0, 0).
+	 * @param xStepX Change in old x per step in new x.
+	 * @param xStepY Change in old y per step in new x.
+	 * @param yStepX Change in old x per step in new y.
+	 * @param yStepY Change in old y per step in new y.
+	 * @param executor The BandExecutor to run on.
+	 *
+	 * @throws IllegalArgumentException If some new pixel would be read
+	 * 	from outside of source.
+	 */
+	public static void copy(SimplePicture source, SimplePicture target,
+			int originX, int originY, int xStepX, int xStepY, int yStepX,
+			int yStepY, BandExecutor executor) {
+		int width = target.getWidth();
+		int height = target.getHeight();
+
+		// The raster is read without bounds checks, so check the corners.
+		for (int y = 0; y < height; y += Math.max(1, height - 1))
+			for (int x = 0; x < width; x += Math.max(1, width - 1)) {
+				int oldX = originX + x * xStepX + y * yStepX;
+				int oldY = originY + x * xStepY + y * yStepY;
+				if (oldX < 0 || oldY < 0 || oldX >= source.getWidth() ||
+						oldY >= source.getHeight())
+					throw new IllegalArgumentException("New pixel (" + x +
+							", " + y + ") would be read from outside of " +
+							"the source picture.");
+			}
+
+		int[] to = target.getRaster();
+		int[] flat = source.getFlatRaster();
+		if (flat == null && (xStepY == 0 || yStepY == 0)) {
+			copyRows(source, to, target, originX, originY, xStepX, xStepY,
+					yStepX, yStepY, executor);
+			target.pixelsChanged();
+			return;
+		}
+		// No rotation or flip steps both ways; those read a copy of the pixels.
+		int[] from = flat != null ? flat : source.getRasterForReading();
+		int start = source.rasterIndex(originX, originY);
+		int xStride = xStepY * source.getScanlineStride() + xStepX;
+		int yStride = yStepY * source.getScanlineStride() + yStepX;
+
+		if (xStepY == 0) {
+			executor.run(height, (fromY, toY) -> {
+				for (int y = fromY; y < toY; y++)
+					copyRow(from, start + y * yStride, xStride, to,
+							target.rasterIndex(0, y), width);
+			});
+		} else {
+			executor.run(height, TILE_SIZE, (fromY, toY) -> {
+				for (int tileY = fromY; tileY < toY; tileY += TILE_SIZE) {
+					int tileBottom = Math.min(toY, tileY + TILE_SIZE);
+					for (int tileX = 0; tileX < width; tileX += TILE_SIZE) {
+						int tileWidth = Math.min(width - tileX, TILE_SIZE);
+						for (int y = tileY; y < tileBottom; y++)
+							copyRow(from, start + y * yStride +
+									tileX * xStride, xStride, to,
+									target.rasterIndex(tileX, y), tileWidth);
+					}
+				}
+			});
+		}
+		target.pixelsChanged();
+	}
+
+	/**
+	 * Does what copy does when the pixels of source are tiled or kept off
+	 * 	the heap, reading them a row at a time and leaving them where they
+	 * 	are. When xStepY is 0, each new row is read from one old row.
+	 * 	Otherwise yStepY must be 0, and each new column is read from one
+	 * 	old row; the bands are then of new columns, and the old rows of
+	 * 	TILE_SIZE new columns are read at once and copied from while they
+	 * 	stay in the cache.
+	 *
+	 * @param source The SimplePicture to read from.
+	 * @param to The raster of target.
+	 * @param target The SimplePicture to write to.
+	 * @param originX The old x-coordinate of new pixel (0, 0).
+	 * @param originY The old y-coordinate of new pixel (0, 0).
+	 * @param xStepX Change in old x per step in new x.
+	 * @param xStepY Change in old y per step in new x.
+	 * @param yStepX Change in old x per step in new y.
+	 * @param yStepY Change in old y per step in new y.
+	 * @param executor The BandExecutor to run on.
+	 */
+	private static void copyRows(SimplePicture source, int[] to,
+			SimplePicture target, int originX, int originY, int xStepX,
+			int xStepY, int yStepX, int yStepY, BandExecutor executor) {
+		int width = target.getWidth();
+		int height = target.getHeight();
+		int sourceWidth = source.getWidth();
+
+		if (xStepY == 0) {
+			executor.run(height, (fromY, toY) -> {
+				int[] row = new int[sourceWidth];
+				for (int y = fromY; y < toY; y++)
+					copyRow(source.getRow(originY + y * yStepY, row),
+							originX + y * yStepX, xStepX, to,
+							target.rasterIndex(0, y), width);
+			});
+			return;
+		}
+
+		executor.run(width, TILE_SIZE, (fromX, toX) -> {
+			// Old row i of rows is the one new column tileX + i reads.
+			int[] rows = new int[TILE_SIZE * sourceWidth];
+			for (int tileX = fromX; tileX < toX; tileX += TILE_SIZE) {
+				int tileWidth = Math.min(toX - tileX, TILE_SIZE);
+				for (int i = 0; i < tileWidth; i++)
+					source.getRow(originY + (tileX + i) * xStepY, rows,
+							i * sourceWidth);
+				for (int y = 0; y < height; y++)
+					copyRow(rows, originX + tileX * xStepX + y * yStepX,
+							sourceWidth + xStepX, to,
+							target.rasterIndex(tileX, y), tileWidth);
+			}
+		});
+	}
+
+	/**
+	 * Copies a run of pixels into a row.
+	 *
+	 * @param from The raster to read from.
+	 * @param fromIndex The index of the first pixel to read.
+	 * @param fromStride The change in index from one pixel read to the next.
+	 * @param to The raster to write to.
+	 * @param toIndex The index of the first pixel to write.
+	 * @param length The number of pixels to copy.
+	 */
+	private static void copyRow(int[] from, int fromIndex, int fromStride,
+			int[] to, int toIndex, int length) {
+		if (fromStride == 1) {
+			System.arraycopy(from, fromIndex, to, toIndex, length);
+			return;
+		}
+		for (int end = toIndex + length; toIndex < end; toIndex++) {
+			to[toIndex] = from[fromIndex];
+			fromIndex += fromStride;
+		}
+	}
+
+} // End of RasterTransform class
@@ -3,7 +3,10 @@ import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.geom.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.io.*;
+import java.util.Arrays;
 
 /**
  * A class that represents a simple picture. A simple picture may have an
@@ -44,6 +47,49 @@ public class SimplePicture
 	 */
 	private BufferedImage bufferedImage;
 
+	/**
+	 * The int[] backing the BufferedImage, holding one packed ARGB value
+	 * 	per pixel. Pixel (x, y) lives at index y * scanlineStride + x.
+	 */
+	private int[] raster;
+
+	/**
+	 * Number of ints between the start of one row of the raster and the
+	 * 	start of the next.
+	 */
+	private int scanlineStride;
+
+	/**
+	 * The pixels of this SimplePicture while they are shared with the
+	 * 	SimplePicture it was copied from, or null. While the pixels are
+	 * 	tiled, bufferedImage and raster are null, and they are only
+	 * 	turned back into a BufferedImage when something needs one.
+	 */
+	private TiledRaster tiles;
+
+	/**
+	 * True, if copies of this SimplePicture read from the raster. The
+	 * 	raster must then be replaced by one of its own before it is
+	 * 	written.
+	 */
+	private boolean rasterShared;
+
+	/**
+	 * The pixels of this SimplePicture while they are kept off the heap,
+	 * 	or null. While they are, bufferedImage, raster, and tiles are null,
+	 * 	and the pixels only move back onto the heap when something asks
+	 * 	for the raster.
+	 */
+	private DirectRaster direct;
+
+	/**
+	 * True, if a BufferedImage or Graphics that writes the pixels where
+	 * 	they are now has been handed out. Nothing is told when it is
+	 * 	written to, so values computed from the pixels cannot be kept
+	 * 	until the pixels move to another image or raster.
+	 */
+	private volatile boolean imageHandedOut;
+
 	/**
 	 * PictureFrame used to display the SimplePicture.
 	 */
@@ -88,12 +134,14 @@ public class SimplePicture
 	 * @param height The desired height.
 	 */
 	public SimplePicture(int width, int height) {
-		bufferedImage = new BufferedImage(width, height,
-				BufferedImage.TYPE_INT_RGB);
+		setBufferedImage(new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_ARGB));
 		title = "No current picture" + projectName;
 		fileName = "None";
 		extension = "jpg";
-		setAllPixelsToAColor(Color.white);
+
+		// A new ARGB image is fully transparent; start from opaque white.
+		Arrays.fill(raster, Color.white.getRGB());
 	}
 
 	/**
@@ -112,6 +160,11 @@ public class SimplePicture
 
 	/**
 	 * A constructor that takes another SimplePicture to copy information from.
+	 * 	No pixels are copied: the copy shares them, in tiles, and a tile is
+	 * 	only copied when one of the two SimplePictures writes into it.
+	 * 	Copies that go on to change only a few pixels thus only copy the
+	 * 	tiles holding those pixels. The copy of a SimplePicture kept off
+	 * 	the heap is kept off the heap as well, and copies every pixel.
 	 * 
 	 * @param copyPicture The SimplePicture to copy from.
 	 */
@@ -125,11 +178,16 @@ public class SimplePicture
 		if (copyPicture.title != null)
 			this.title = new String(copyPicture.title);
 
-		if (copyPicture.bufferedImage != null)
+		if (copyPicture.direct != null)
 		{
-			this.bufferedImage = new BufferedImage(copyPicture.getWidth(),
-					copyPicture.getHeight(), BufferedImage.TYPE_INT_RGB);
-			this.copyPicture(copyPicture);
+			direct = copyPicture.direct.copy();
+			scanlineStride = direct.getWidth();
+		}
+		else if (copyPicture.bufferedImage != null || copyPicture.tiles != null)
+		{
+			tiles = copyPicture.shareTiles();
+			// The same stride a BufferedImage of this size will have.
+			scanlineStride = tiles.getWidth();
 		}
 	}
 
@@ -147,24 +205,47 @@ public class SimplePicture
 	 * @param sourcePicture The SimplePicture object to copy.
 	 */
 	public void copyPicture(SimplePicture sourcePicture) {
-		Pixel sourcePixel = null;
-		Pixel targetPixel = null;
-
-		// Loop through the columns
-		for (int sourceX = 0, targetX = 0; 
-		sourceX < sourcePicture.getWidth() && targetX < this.getWidth();
-		sourceX++, targetX++) {
-			// Loop through the rows
-			for (int sourceY = 0, targetY = 0; 
-			sourceY < sourcePicture.getHeight() && 
-			targetY < this.getHeight();
-			sourceY++, targetY++)
-			{
-				sourcePixel = sourcePicture.getPixel(sourceX, sourceY);
-				targetPixel = this.getPixel(targetX, targetY);
-				targetPixel.setColor(sourcePixel.getColor());
-			}
+		// Only the overlapping top left region is copied.
+		int width = Math.min(sourcePicture.getWidth(), this.getWidth());
+		int height = Math.min(sourcePicture.getHeight(), this.getHeight());
+
+		copyRegion(sourcePicture, 0, 0, this, 0, 0, width, height);
+	}
+
+	/**
+	 * Copies a rectangle of packed pixels from one SimplePicture into
+	 * 	another, one row at a time. The two rectangles may belong to the
+	 * 	same SimplePicture only if they do not overlap.
+	 * 
+	 * @param source The SimplePicture to copy from.
+	 * @param sourceX The leftmost x-coordinate of the source rectangle.
+	 * @param sourceY The topmost y-coordinate of the source rectangle.
+	 * @param target The SimplePicture to copy into.
+	 * @param targetX The leftmost x-coordinate of the target rectangle.
+	 * @param targetY The topmost y-coordinate of the target rectangle.
+	 * @param width The width of the rectangle.
+	 * @param height The height of the rectangle.
+	 */
+	public static void copyRegion(SimplePicture source, int sourceX,
+			int sourceY, SimplePicture target, int targetX, int targetY,
+			int width, int height) {
+		int[] from = source.getFlatRaster();
+		// Tiled pixels, or pixels kept off the heap, are read a row at a time.
+		int[] sourceRow = from == null ? new int[source.getWidth()] : null;
+		int[] to = target.getRaster();
+		for (int row = 0; row < height; row++) {
+			if (from != null)
+				System.arraycopy(from,
+						source.rasterIndex(sourceX, sourceY + row),
+						to,
+						target.rasterIndex(targetX, targetY + row), width);
+			else
+				System.arraycopy(source.getRow(sourceY + row, sourceRow),
+						sourceX,
+						to,
+						target.rasterIndex(targetX, targetY + row), width);
 		}
+		target.pixelsChanged();
 	}
 
 	/**
@@ -173,29 +254,380 @@ public class SimplePicture
 	 * @param color The Color to set to.
 	 */
 	public void setAllPixelsToAColor(Color color) {
-		// Loop through all x.
-		for (int x = 0; x < this.getWidth(); x++)
-		{
-			// Loop through all y.
-			for (int y = 0; y < this.getHeight(); y++)
-			{
-				getPixel(x, y).setColor(color);
-			}
+		int rgb = color.getRGB() & 0x00ffffff;
+		int width = this.getWidth();
+		int[] raster = getRaster();
+
+		// Keep the alpha of every pixel and replace its color.
+		for (int y = 0; y < this.getHeight(); y++) {
+			int index = rasterIndex(0, y);
+			for (int end = index + width; index < end; index++)
+				raster[index] = (raster[index] & 0xff000000) | rgb;
 		}
+		pixelsChanged();
 	}
 
 	/**
-	 * @return The BufferedImage in this SimplePicture. 
+	 * @return The BufferedImage in this SimplePicture. If the pixels are
+	 * 	kept off the heap, it is a BufferedImage that reads and writes
+	 * 	them where they are. Writes to it are not seen by pixelsChanged,
+	 * 	so while it holds the pixels, values computed from them, such as
+	 * 	the content hash of a Picture, are computed again whenever they
+	 * 	are asked for.
 	 */
 	public BufferedImage getBufferedImage() {
+		BufferedImage image = drawingImage();
+		imageHandedOut = true;
+		pixelsChanged();
+		return image;
+	}
+
+	/**
+	 * @return The BufferedImage holding the pixels, for code of this class
+	 * 	that draws on it and then calls pixelsChanged itself.
+	 */
+	private BufferedImage drawingImage() {
+		DirectRaster direct = this.direct;
+		if (direct != null)
+			return direct.getImage();
+
+		// Whoever asks for it may draw on it.
+		unshare();
 		return bufferedImage;
 	}
 
+	/**
+	 * @return True, if a BufferedImage or Graphics that writes the pixels
+	 * 	where they are now has been handed out, so that values computed
+	 * 	from the pixels must not be kept.
+	 */
+	public boolean isImageHandedOut() { return imageHandedOut; }
+
+	/**
+	 * Replaces the BufferedImage of this SimplePicture. Images that are not
+	 * 	already TYPE_INT_ARGB are converted, so that the pixels can always
+	 * 	be reached directly as packed ints through the raster.
+	 * 
+	 * @param image The BufferedImage to use.
+	 */
+	private void setBufferedImage(BufferedImage image) {
+		if (image.getType() != BufferedImage.TYPE_INT_ARGB) {
+			int width = image.getWidth();
+			int height = image.getHeight();
+			BufferedImage converted = new BufferedImage(width, height,
+					BufferedImage.TYPE_INT_ARGB);
+			int[] data = ((DataBufferInt)
+					converted.getRaster().getDataBuffer()).getData();
+			image.getRGB(0, 0, width, height, data, 0, width);
+			image = converted;
+		}
+
+		useImage(image);
+		pixelsChanged();
+	}
+
+	/**
+	 * Copies the file name, extension, and title of another SimplePicture,
+	 * 	but none of its pixels, as the copy constructor would.
+	 * 
+	 * @param other The SimplePicture to copy them from.
+	 */
+	protected void copyInfo(SimplePicture other) {
+		if (other.fileName != null) {
+			fileName = other.fileName;
+			extension = other.extension;
+		}
+		if (other.title != null)
+			title = other.title;
+	}
+
+	/**
+	 * Makes a TYPE_INT_ARGB BufferedImage the one holding the pixels of
+	 * 	this SimplePicture.
+	 * 
+	 * @param image The BufferedImage to use.
+	 */
+	private void useImage(BufferedImage image) {
+		bufferedImage = image;
+		raster = ((DataBufferInt)
+				image.getRaster().getDataBuffer()).getData();
+		scanlineStride = ((SinglePixelPackedSampleModel)
+				image.getSampleModel()).getScanlineStride();
+		rasterShared = false;
+		tiles = null;
+		direct = null;
+		imageHandedOut = false;
+	}
+
+	/**
+	 * @return The TiledRaster for a new copy of this SimplePicture to hold.
+	 */
+	private synchronized TiledRaster shareTiles() {
+		if (tiles != null)
+			return tiles.copy();
+		rasterShared = true;
+		return new TiledRaster(raster, scanlineStride, getWidth(),
+				getHeight());
+	}
+
+	/**
+	 * Moves the pixels of this SimplePicture off the heap, into a
+	 * 	DirectRaster, so that a large picture that lives for a long time
+	 * 	does not weigh on the garbage collector. Pixels, rows, copies,
+	 * 	point operations, drawing, and display all keep working on them
+	 * 	where they are. Asking for the raster moves them back onto the
+	 * 	heap, since the raster is an int[].
+	 */
+	public synchronized void moveOffHeap() {
+		if (direct != null)
+			return;
+
+		DirectRaster pixels = new DirectRaster(getWidth(), getHeight());
+		int[] row = new int[getWidth()];
+		for (int y = 0; y < getHeight(); y++)
+			pixels.setRow(y, getRow(y, row));
+		bufferedImage = null;
+		raster = null;
+		scanlineStride = pixels.getWidth();
+		rasterShared = false;
+		tiles = null;
+		direct = pixels;
+		imageHandedOut = false;
+	}
+
+	/**
+	 * @return True, if the pixels of this SimplePicture are kept off the
+	 * 	heap.
+	 */
+	public boolean isOffHeap() { return direct != null; }
+
+	/**
+	 * Lets go of the pixels of this SimplePicture, so that the memory of
+	 * 	pixels kept off the heap can be handed back even while this
+	 * 	SimplePicture is still referred to; see DirectRaster.close. The
+	 * 	SimplePicture must not be used afterwards.
+	 */
+	public synchronized void close() {
+		if (direct != null)
+			direct.close();
+		direct = null;
+		bufferedImage = null;
+		raster = null;
+		tiles = null;
+	}
+
+	/**
+	 * Makes the pixels of another SimplePicture the pixels of this one,
+	 * 	whatever their size, without copying them. This is how effects
+	 * 	that change the size of a picture are done in place. The other
+	 * 	SimplePicture must not be used afterwards.
+	 * 
+	 * @param source The SimplePicture to take the pixels of.
+	 */
+	public synchronized void takePixels(SimplePicture source) {
+		synchronized (source) {
+			bufferedImage = source.bufferedImage;
+			raster = source.raster;
+			scanlineStride = source.scanlineStride;
+			tiles = source.tiles;
+			rasterShared = source.rasterShared;
+			direct = source.direct;
+			imageHandedOut = source.imageHandedOut;
+		}
+		pixelsChanged();
+	}
+
+	/**
+	 * Turns tiled pixels, or pixels kept off the heap, back into a
+	 * 	BufferedImage.
+	 */
+	private synchronized void untile() {
+		if (direct != null) {
+			DirectRaster pixels = direct;
+			int width = pixels.getWidth();
+			BufferedImage image = new BufferedImage(width, pixels.getHeight(),
+					BufferedImage.TYPE_INT_ARGB);
+			int[] data = ((DataBufferInt)
+					image.getRaster().getDataBuffer()).getData();
+			for (int y = 0; y < pixels.getHeight(); y++)
+				pixels.getRow(y, data, y * width);
+			// Images handed out earlier may still be shown, so the old
+			// pixels are left for the garbage collector rather than closed.
+			useImage(image);
+		}
+		if (tiles == null)
+			return;
+
+		int width = tiles.getWidth();
+		BufferedImage image = new BufferedImage(width, tiles.getHeight(),
+				BufferedImage.TYPE_INT_ARGB);
+		int[] data = ((DataBufferInt)
+				image.getRaster().getDataBuffer()).getData();
+		for (int y = 0; y < tiles.getHeight(); y++)
+			tiles.getRow(y, data, y * width);
+		useImage(image);
+	}
+
+	/**
+	 * Makes sure this SimplePicture has a raster that nothing else reads,
+	 * 	so that it can be written.
+	 */
+	private synchronized void unshare() {
+		untile();
+		if (!rasterShared)
+			return;
+
+		int width = getWidth();
+		BufferedImage image = new BufferedImage(width, getHeight(),
+				BufferedImage.TYPE_INT_ARGB);
+		int[] data = ((DataBufferInt)
+				image.getRaster().getDataBuffer()).getData();
+		for (int y = 0; y < getHeight(); y++)
+			System.arraycopy(raster, rasterIndex(0, y), data, y * width,
+					width);
+		useImage(image);
+	}
+
+	/**
+	 * Tells this SimplePicture that its pixels have changed. Every method
+	 * 	of SimplePicture that changes pixels calls it; code that writes to
+	 * 	the raster directly must call it as well. Subclasses that keep
+	 * 	values computed from the pixels override it to forget them.
+	 */
+	public void pixelsChanged() { }
+
+	/**
+	 * @return The int[] holding the pixels of this SimplePicture, one
+	 * 	packed ARGB value per pixel. Writes to the array show up in the
+	 * 	SimplePicture directly, and must be followed by a call to
+	 * 	pixelsChanged(). If the pixels are shared with a copy, they are
+	 * 	first copied into a raster of this SimplePicture's own; if they
+	 * 	are kept off the heap, they are moved back onto it.
+	 * 
+	 * 	The array only holds the pixels until they next move: once a copy
+	 * 	of this SimplePicture is made, or its pixels are moved off the
+	 * 	heap or replaced, writes to the array no longer reach it, or reach
+	 * 	the copy as well. Code that keeps the array must call getRaster()
+	 * 	again before each write after any of these, as PixelCursor does.
+	 */
+	public int[] getRaster() {
+		if (tiles != null || rasterShared || direct != null)
+			unshare();
+		return raster;
+	}
+
+	/**
+	 * @return The int[] holding the pixels of this SimplePicture, as
+	 * 	getRaster, but only for reading. A raster shared with copies is
+	 * 	returned as it is, so nothing needs to be copied. Tiled pixels, or
+	 * 	pixels kept off the heap, are left where they are, and a new array
+	 * 	holding a copy of them is returned instead; code that reads them
+	 * 	often should use getRow.
+	 */
+	public int[] getRasterForReading() {
+		DirectRaster direct = this.direct;
+		TiledRaster tiles = this.tiles;
+		if (direct == null && tiles == null)
+			return raster;
+
+		int width = getWidth();
+		int[] pixels = new int[width * getHeight()];
+		for (int y = 0; y < getHeight(); y++) {
+			if (direct != null)
+				direct.getRow(y, pixels, y * width);
+			else
+				tiles.getRow(y, pixels, y * width);
+		}
+		return pixels;
+	}
+
+	/**
+	 * @return The raster, if the pixels are held in one on the heap, for
+	 * 	reading only, or null if they are tiled or kept off the heap.
+	 * 	Nothing is copied or moved either way.
+	 */
+	int[] getFlatRaster() {
+		return tiles == null && direct == null ? raster : null;
+	}
+
+	/**
+	 * @return The number of ints between the start of one row of the
+	 * 	raster and the start of the next.
+	 */
+	public int getScanlineStride() { return scanlineStride; }
+
+	/**
+	 * @param x The x-coordinate of the pixel.
+	 * @param y The y-coordinate of the pixel.
+	 * 
+	 * @return The index of the pixel in the raster.
+	 */
+	public int rasterIndex(int x, int y) {
+		return y * scanlineStride + x;
+	}
+
+	/**
+	 * Copies one row of packed ARGB pixels out of this SimplePicture.
+	 * 
+	 * @param y The y-coordinate of the row.
+	 * @param row The array to copy into; it must hold at least
+	 * 	getWidth() values.
+	 * 
+	 * @return The array provided.
+	 */
+	public int[] getRow(int y, int[] row) {
+		return getRow(y, row, 0);
+	}
+
+	/**
+	 * Copies one row of packed ARGB pixels out of this SimplePicture, to
+	 * 	any place in an array.
+	 * 
+	 * @param y The y-coordinate of the row.
+	 * @param row The array to copy into.
+	 * @param offset The index in row to copy the first pixel to.
+	 * 
+	 * @return The array provided.
+	 */
+	public int[] getRow(int y, int[] row, int offset) {
+		DirectRaster direct = this.direct;
+		TiledRaster tiles = this.tiles;
+		if (direct != null)
+			direct.getRow(y, row, offset);
+		else if (tiles != null)
+			tiles.getRow(y, row, offset);
+		else
+			System.arraycopy(raster, rasterIndex(0, y), row, offset,
+					getWidth());
+		return row;
+	}
+
+	/**
+	 * Overwrites one row of this SimplePicture with packed ARGB pixels.
+	 * 
+	 * @param y The y-coordinate of the row.
+	 * @param row The pixels to copy in; the first getWidth() values
+	 * 	are used.
+	 */
+	public void setRow(int y, int[] row) {
+		DirectRaster direct = this.direct;
+		TiledRaster tiles = this.tiles;
+		if (direct != null)
+			direct.setRow(y, row);
+		else if (tiles != null)
+			tiles.setRow(y, row);
+		else
+			System.arraycopy(row, 0, getRaster(), rasterIndex(0, y),
+					getWidth());
+		pixelsChanged();
+	}
+
 	/**
 	 * @return A Graphics object to be used by this SimplePicture for drawing.
 	 */
 	public Graphics getGraphics() {
-		return bufferedImage.getGraphics();
+		// Whatever is drawn with it changes the pixels.
+		return getBufferedImage().getGraphics();
 	}
 
 	/**
@@ -203,7 +635,7 @@ public class SimplePicture
 	 *	which can be used to do 2D drawing on the picture.
 	 */
 	public Graphics2D createGraphics() {
-		return bufferedImage.createGraphics();
+		return getBufferedImage().createGraphics();
 	}
 
 	/**
@@ -230,12 +662,24 @@ public class SimplePicture
 	/**
 	 * @return The width of this SimplePicture in pixels.
 	 */
-	public int getWidth() { return bufferedImage.getWidth(); }
+	public int getWidth() {
+		DirectRaster direct = this.direct;
+		if (direct != null)
+			return direct.getWidth();
+		TiledRaster tiles = this.tiles;
+		return tiles != null ? tiles.getWidth() : bufferedImage.getWidth();
+	}
 
 	/**
 	 * @return The height of this SimplePicture picture in pixels.
 	 */
-	public int getHeight() { return bufferedImage.getHeight(); }
+	public int getHeight() {
+		DirectRaster direct = this.direct;
+		if (direct != null)
+			return direct.getHeight();
+		TiledRaster tiles = this.tiles;
+		return tiles != null ? tiles.getHeight() : bufferedImage.getHeight();
+	}
 
 	/**
 	 * @return the PictureFrame associated with this
@@ -257,7 +701,7 @@ public class SimplePicture
 	 */
 	public Image getImage() {
 		// Return the BufferedImage object because it is an Image.
-		return bufferedImage;
+		return getBufferedImage();
 	}
 
 	/**
@@ -268,7 +712,14 @@ public class SimplePicture
 	 * 	blue, each occupying 8 bits each.
 	 */
 	public int getBasicPixel(int x, int y) {
-		return bufferedImage.getRGB(x, y);
+		checkBounds(x, y);
+		DirectRaster direct = this.direct;
+		if (direct != null)
+			return direct.get(x, y);
+		TiledRaster tiles = this.tiles;
+		if (tiles != null)
+			return tiles.get(x, y);
+		return raster[y * scanlineStride + x];
 	}
 
 	/** 
@@ -279,7 +730,29 @@ public class SimplePicture
 	 * @param rgb The new RGB value of the pixel (alpha, red, green, blue).
 	 */     
 	public void setBasicPixel(int x, int y, int rgb) {
-		bufferedImage.setRGB(x, y, rgb);
+		checkBounds(x, y);
+		DirectRaster direct = this.direct;
+		TiledRaster tiles = this.tiles;
+		if (direct != null)
+			direct.set(x, y, rgb);
+		else if (tiles != null)
+			tiles.set(x, y, rgb);
+		else
+			getRaster()[y * scanlineStride + x] = rgb;
+		pixelsChanged();
+	}
+
+	/**
+	 * Throws the same exception as BufferedImage.getRGB would if the
+	 * 	coordinates provided are outside of this SimplePicture.
+	 * 
+	 * @param x The x-coordinate of the pixel.
+	 * @param y The y-coordinate of the pixel.
+	 */
+	private void checkBounds(int x, int y) {
+		if (x < 0 || y < 0 || x >= getWidth() || y >= getHeight())
+			throw new ArrayIndexOutOfBoundsException(
+					"Coordinate out of bounds!");
 	}
 
 	/**
@@ -302,11 +775,12 @@ public class SimplePicture
 	 */
 	public void load(Image image) {
 		// Get a Graphics context to use to draw on the BufferedImage.
-		Graphics2D graphics2d = bufferedImage.createGraphics();
+		Graphics2D graphics2d = drawingImage().createGraphics();
 
 		/* Draw the Image on the BufferedImage
 		 * starting at (0,0). */
 		graphics2d.drawImage(image, 0, 0, null);
+		pixelsChanged();
 
 		// Show the new image.
 		show();
@@ -390,7 +864,12 @@ public class SimplePicture
 					" could not be opened. " +
 			"Check to see that you can read to the directory.");
 
-		bufferedImage = ImageIO.read(file);
+		BufferedImage image = ImageIO.read(file);
+		if (image == null)
+			throw new IOException(this.fileName +
+					" is not in an image format that can be read.");
+
+		setBufferedImage(image);
 	}
 
 	/**
@@ -435,7 +914,7 @@ public class SimplePicture
 	 */
 	public void addMessage(String message, int xPos, int yPos) {
 		// Get a graphics context to use to draw on the BufferedImage.
-		Graphics2D graphics2d = bufferedImage.createGraphics();
+		Graphics2D graphics2d = drawingImage().createGraphics();
 
 		// Set the color to white.
 		graphics2d.setPaint(Color.white);
@@ -445,6 +924,7 @@ public class SimplePicture
 
 		// Draw the message.
 		graphics2d.drawString(message, xPos, yPos);
+		pixelsChanged();
 
 	}
 
@@ -479,11 +959,12 @@ public class SimplePicture
 					(int) (getHeight() * yFactor));
 
 		// Get the Graphics2D object to draw on the result.
-		Graphics graphics = result.getGraphics();
+		Graphics graphics = result.drawingImage().getGraphics();
 		Graphics2D g2 = (Graphics2D) graphics;
 
 		// Draw the current Image onto the result image.
-		g2.drawImage(this.getImage(), scaleTransform, null);
+		g2.drawImage(this.drawingImage(), scaleTransform, null);
+		result.pixelsChanged();
 
 		return result;
 	}
@@ -533,9 +1014,39 @@ public class SimplePicture
 		if (posDot >= 0)
 			extension = fileName.substring(posDot + 1);
 
-		/* Write the contents of the BufferedImage to the file
-		 * as JPEG. */
-		ImageIO.write(bufferedImage, extension, file);
+		/* Write the contents of the BufferedImage to the file. Formats
+		 * such as JPEG and BMP have no writer for images with alpha, so
+		 * fall back to an opaque copy for those. */
+		DirectRaster direct = this.direct;
+		BufferedImage image;
+		if (direct != null)
+			image = direct.getImage();
+		else {
+			untile();
+			image = bufferedImage;
+		}
+		if (!ImageIO.write(image, extension, file)
+				&& !ImageIO.write(getOpaqueImage(), extension, file))
+			throw new IOException("No writer is available for " +
+					fileName);
+	}
+
+	/**
+	 * @return A TYPE_INT_RGB copy of the BufferedImage in this
+	 * 	SimplePicture, with the alpha dropped.
+	 */
+	private BufferedImage getOpaqueImage() {
+		int width = getWidth();
+		int height = getHeight();
+		BufferedImage opaque = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		int[] data = ((DataBufferInt)
+				opaque.getRaster().getDataBuffer()).getData();
+		// TYPE_INT_RGB ignores the top 8 bits, so rows copy unchanged.
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++)
+			System.arraycopy(getRow(y, row), 0, data, y * width, width);
+		return opaque;
 	}
 
 	/**
@@ -0,0 +1,245 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Class that holds the pixels of a picture as square tiles that copies of
+ * 	the picture share. Copying a TiledRaster copies no pixels: both copies
+ * 	refer to the same tiles, and a tile is only duplicated the first time
+ * 	either copy writes into it. A copy that only has a few of its pixels
+ * 	changed therefore only costs the tiles that hold those pixels.
+ *
+ * 	A TiledRaster starts out as a view of a flat raster, which it reads its
+ * 	tiles from until they are written. That raster, and every tile once
+ * 	shared, is never written again by any TiledRaster; it is up to the
+ * 	owner of the flat raster not to write it either.
+ *
+ * 	Pixels are packed ints, with alpha, red, green, and blue each taking 8
+ * 	bits from left to right, as in the raster of a SimplePicture.
+ */
+public class TiledRaster
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** Width and height of a tile. */
+	public static final int TILE_SIZE = 64;
+
+	/** log2 of TILE_SIZE. */
+	private static final int TILE_SHIFT = 6;
+
+	/** Mask giving the position of a pixel within its tile. */
+	private static final int TILE_MASK = TILE_SIZE - 1;
+
+	/** Width of the picture. */
+	private final int width;
+
+	/** Height of the picture. */
+	private final int height;
+
+	/** Number of tiles in a row of tiles. */
+	private final int tilesAcross;
+
+	/** The flat raster that tiles not yet written are read from. */
+	private final int[] base;
+
+	/** Number of ints between the start of one row of base and the start
+	 * 	of the next. */
+	private final int baseStride;
+
+	/** Tiles written before the last copy, and now shared with other
+	 * 	TiledRasters; null where the tile is still in base. */
+	private final int[][] shared;
+
+	/** Tiles written since the last copy, which only this TiledRaster holds;
+	 * 	null where there is none. An AtomicReferenceArray, so that a tile
+	 * 	duplicated by one thread is seen whole by every other. */
+	private final AtomicReferenceArray<int[]> owned;
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * A constructor that views a flat raster.
+	 *
+	 * @param base The flat raster to read from. It must not be written
+	 * 	for as long as this TiledRaster, or any copy of it, is in use.
+	 * @param baseStride The number of ints between the start of one row of
+	 * 	base and the start of the next.
+	 * @param width The width of the picture.
+	 * @param height The height of the picture.
+	 */
+	public TiledRaster(int[] base, int baseStride, int width, int height) {
+		this.base = base;
+		this.baseStride = baseStride;
+		this.width = width;
+		this.height = height;
+		tilesAcross = (width + TILE_MASK) >> TILE_SHIFT;
+		int tileCount = tilesAcross * ((height + TILE_MASK) >> TILE_SHIFT);
+		shared = new int[tileCount][];
+		owned = new AtomicReferenceArray<int[]>(tileCount);
+	}
+
+	/**
+	 * A constructor that shares all of the tiles of another TiledRaster,
+	 * 	which must have no tiles of its own.
+	 *
+	 * @param other The TiledRaster to copy.
+	 */
+	private TiledRaster(TiledRaster other) {
+		base = other.base;
+		baseStride = other.baseStride;
+		width = other.width;
+		height = other.height;
+		tilesAcross = other.tilesAcross;
+		shared = other.shared.clone();
+		owned = new AtomicReferenceArray<int[]>(shared.length);
+	}
+
+	/////////////////////////////// Methods ///////////////////////////////////
+
+	/**
+	 * @return The width of the picture.
+	 */
+	public int getWidth() { return width; }
+
+	/**
+	 * @return The height of the picture.
+	 */
+	public int getHeight() { return height; }
+
+	/**
+	 * Copies this TiledRaster. The tiles this TiledRaster has written are
+	 * 	shared from now on, so the next write to any of them, by either
+	 * 	copy, duplicates it first. No pixels are copied.
+	 *
+	 * @return The copy.
+	 */
+	public synchronized TiledRaster copy() {
+		for (int tile = 0; tile < shared.length; tile++) {
+			int[] pixels = owned.get(tile);
+			if (pixels != null) {
+				shared[tile] = pixels;
+				owned.set(tile, null);
+			}
+		}
+		return new TiledRaster(this);
+	}
+
+	/**
+	 * @return The number of tiles this TiledRaster has duplicated since it
+	 * 	was last copied.
+	 */
+	public int getOwnedTileCount() {
+		int count = 0;
+		for (int tile = 0; tile < shared.length; tile++)
+			if (owned.get(tile) != null)
+				count++;
+		return count;
+	}
+
+	/**
+	 * @param x The x-coordinate of the pixel.
+	 * @param y The y-coordinate of the pixel.
+	 *
+	 * @return The pixel; the coordinates are not checked.
+	 */
+	public int get(int x, int y) {
+		int tile = (y >> TILE_SHIFT) * tilesAcross + (x >> TILE_SHIFT);
+		int[] pixels = owned.get(tile);
+		if (pixels == null)
+			pixels = shared[tile];
+		if (pixels == null)
+			return base[y * baseStride + x];
+		return pixels[((y & TILE_MASK) << TILE_SHIFT) | (x & TILE_MASK)];
+	}
+
+	/**
+	 * Sets a pixel, duplicating its tile first if this TiledRaster does not
+	 * 	hold it alone.
+	 *
+	 * @param x The x-coordinate of the pixel.
+	 * @param y The y-coordinate of the pixel.
+	 * @param argb The new value of the pixel; the coordinates are not
+	 * 	checked.
+	 */
+	public void set(int x, int y, int argb) {
+		int[] pixels = own((y >> TILE_SHIFT) * tilesAcross + (x >> TILE_SHIFT));
+		pixels[((y & TILE_MASK) << TILE_SHIFT) | (x & TILE_MASK)] = argb;
+	}
+
+	/**
+	 * Copies one row of pixels out of this TiledRaster.
+	 *
+	 * @param y The y-coordinate of the row.
+	 * @param row The array to copy into.
+	 * @param offset The index in row to copy the first pixel to.
+	 */
+	public void getRow(int y, int[] row, int offset) {
+		int tileRow = (y >> TILE_SHIFT) * tilesAcross;
+		int inTile = (y & TILE_MASK) << TILE_SHIFT;
+
+		for (int tileX = 0; tileX < tilesAcross; tileX++) {
+			int x = tileX << TILE_SHIFT;
+			int length = Math.min(TILE_SIZE, width - x);
+			int[] pixels = owned.get(tileRow + tileX);
+			if (pixels == null)
+				pixels = shared[tileRow + tileX];
+
+			if (pixels == null)
+				System.arraycopy(base, y * baseStride + x, row, offset + x,
+						length);
+			else
+				System.arraycopy(pixels, inTile, row, offset + x, length);
+		}
+	}
+
+	/**
+	 * Overwrites one row of this TiledRaster, duplicating each tile the row
+	 * 	crosses first if this TiledRaster does not hold it alone.
+	 *
+	 * @param y The y-coordinate of the row.
+	 * @param row The pixels to copy in; the first width values are used.
+	 */
+	public void setRow(int y, int[] row) {
+		int tileRow = (y >> TILE_SHIFT) * tilesAcross;
+		int inTile = (y & TILE_MASK) << TILE_SHIFT;
+
+		for (int tileX = 0; tileX < tilesAcross; tileX++) {
+			int x = tileX << TILE_SHIFT;
+			System.arraycopy(row, x, own(tileRow + tileX), inTile,
+					Math.min(TILE_SIZE, width - x));
+		}
+	}
+
+	/**
+	 * @param tile The number of a tile.
+	 *
+	 * @return The pixels of the tile that only this TiledRaster holds,
+	 * 	duplicating them from a shared tile or from base if needed.
+	 */
+	private int[] own(int tile) {
+		int[] pixels = owned.get(tile);
+		if (pixels != null)
+			return pixels;
+
+		synchronized (this) {
+			// Another thread may have duplicated the tile in the meantime.
+			pixels = owned.get(tile);
+			if (pixels != null)
+				return pixels;
+
+			if (shared[tile] != null) {
+				pixels = shared[tile].clone();
+			} else {
+				pixels = new int[TILE_SIZE * TILE_SIZE];
+				int x = (tile % tilesAcross) << TILE_SHIFT;
+				int y = (tile / tilesAcross) << TILE_SHIFT;
+				int length = Math.min(TILE_SIZE, width - x);
+				for (int row = 0; row < TILE_SIZE && y + row < height; row++)
+					System.arraycopy(base, (y + row) * baseStride + x, pixels,
+							row << TILE_SHIFT, length);
+			}
+			owned.set(tile, pixels);
+			return pixels;
+		}
+	}
+
+} // End of TiledRaster class
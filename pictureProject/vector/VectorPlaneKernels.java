@@ -0,0 +1,119 @@
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Class that runs the color effects of PlanarPicture with the Vector API,
+ * 	a whole vector register of channel values at a time. It is kept apart
+ * 	from the other classes since it needs the jdk.incubator.vector module
+ * 	to compile; see PlaneKernels for how it is built and picked up. The
+ * 	values left over after the last full vector are handed to the loops
+ * 	of PlaneKernels.
+ *
+ * 	The Vector API has no saturating adds yet, so the correcting of each
+ * 	value to be within 0 and 255 is done with an unsigned comparison and a
+ * 	blend: a value that would pass 255 when added to is replaced by 255,
+ * 	and one that would pass 0 when taken from is replaced by 0.
+ */
+public class VectorPlaneKernels extends PlaneKernels
+{
+
+	//////////////////////////////// Fields ///////////////////////////////////
+
+	/** The widest vector of bytes. */
+	private static final VectorSpecies<Byte> BYTES =
+		ByteVector.SPECIES_PREFERRED;
+
+	/** The widest vector of ints. */
+	private static final VectorSpecies<Integer> INTS =
+		IntVector.SPECIES_PREFERRED;
+
+	/** A vector of bytes with as many lanes as INTS, for widening. */
+	private static final VectorSpecies<Byte> BYTES_PER_INT =
+		VectorSpecies.of(byte.class,
+				VectorShape.forBitSize(INTS.length() * Byte.SIZE));
+
+	//////////////////////////// Constructors /////////////////////////////////
+
+	/**
+	 * A constructor for PlaneKernels.getDefault to call.
+	 */
+	public VectorPlaneKernels() { }
+
+	/////////////////////////////// Methods ///////////////////////////////////
+
+	/**
+	 * @return True.
+	 */
+	public boolean isVectorized() { return true; }
+
+	/**
+	 * @param plane A plane.
+	 * @param index The index of the first value.
+	 *
+	 * @return INTS.length() values of the plane, from 0 to 255, as ints.
+	 */
+	private static IntVector widen(byte[] plane, int index) {
+		return ((IntVector) ByteVector.fromArray(BYTES_PER_INT, plane, index)
+				.convertShape(VectorOperators.B2I, INTS, 0)).and(0xff);
+	}
+
+	/**
+	 * @see PlaneKernels#grayscale
+	 */
+	public void grayscale(byte[] red, byte[] green, byte[] blue,
+			byte[] newRed, byte[] newGreen, byte[] newBlue, int from, int to) {
+		int index = from;
+		for (int end = to - INTS.length(); index <= end;
+				index += INTS.length()) {
+			IntVector sum = widen(red, index).add(widen(green, index))
+				.add(widen(blue, index));
+			// Sums are at most 765, for which this is exactly sum / 3.
+			ByteVector gray = (ByteVector) sum.mul(43691)
+				.lanewise(VectorOperators.LSHR, 17)
+				.convertShape(VectorOperators.I2B, BYTES_PER_INT, 0);
+			gray.intoArray(newRed, index);
+			gray.intoArray(newGreen, index);
+			gray.intoArray(newBlue, index);
+		}
+		super.grayscale(red, green, blue, newRed, newGreen, newBlue, index,
+				to);
+	}
+
+	/**
+	 * @see PlaneKernels#negate
+	 */
+	public void negate(byte[] plane, byte[] newPlane, int from, int to) {
+		int index = from;
+		for (int end = to - BYTES.length(); index <= end;
+				index += BYTES.length())
+			ByteVector.fromArray(BYTES, plane, index).not()
+				.intoArray(newPlane, index);
+		super.negate(plane, newPlane, index, to);
+	}
+
+	/**
+	 * @see PlaneKernels#shift
+	 */
+	public void shift(byte[] plane, byte[] newPlane, int amount, int from,
+			int to) {
+		int index = from;
+		for (int end = to - BYTES.length(); index <= end;
+				index += BYTES.length()) {
+			ByteVector values = ByteVector.fromArray(BYTES, plane, index);
+			if (amount >= 0)
+				values = values.add((byte) amount).blend((byte) 255,
+						values.compare(VectorOperators.UNSIGNED_GT,
+								(byte) (255 - amount)));
+			else
+				values = values.sub((byte) -amount).blend((byte) 0,
+						values.compare(VectorOperators.UNSIGNED_LT,
+								(byte) -amount));
+			values.intoArray(newPlane, index);
+		}
+		super.shift(plane, newPlane, amount, index, to);
+	}
+
+} // End of VectorPlaneKernels class